@@ -0,0 +1,217 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.RsEventSummary;
+import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import com.thoughtworks.rslist.repository.TradeRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteShardRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of building and reading the /rs/list ranking over synthetic events with random votes and
+ * {@code paidSlots} bought ranks on every other rank at the top of the list. Run with
+ * {@code ./gradlew jmh}; the gc profiler reports the allocation rate next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RankingBenchmark {
+  private static final int PAGE_SIZE = 10;
+
+  @Param({"1000", "100000", "1000000"})
+  int events;
+
+  @Param({"0", "10", "100"})
+  int paidSlots;
+
+  private final Random random = new Random(42);
+  private List<RsEventLeaderboard.Entry> ranked;
+  private List<RankingSnapshot.PaidSlot> paid;
+  private List<RsEvent> baselineRanked;
+  private List<TradeOnlyDto> baselineTrades;
+  private List<RsEvent> baselineTradeEvents;
+  private RsEventLeaderboard rsEventLeaderboard;
+  private RsService rsService;
+
+  @Setup
+  public void setUp() {
+    List<RsEventSummary> rows = new ArrayList<>(events);
+    for (int id = 1; id <= events; id++) {
+      rows.add(new Row(id, "event " + id, "keyword", random.nextInt(events)));
+    }
+    paid = new ArrayList<>();
+    List<TradeOnlyDto> trades = new ArrayList<>();
+    Set<Integer> paidIds = new HashSet<>();
+    int rank = 1;
+    while (paid.size() < Math.min(paidSlots, events)) {
+      int rsEventId = 1 + random.nextInt(events);
+      if (paidIds.add(rsEventId)) {
+        paid.add(new RankingSnapshot.PaidSlot(rank, rsEventId));
+        trades.add(TradeOnlyDto.builder().rank(rank).rsEvent(RsEventDto.builder().id(rsEventId).build()).build());
+        rank += 2;
+      }
+    }
+
+    RsListProperties properties = new RsListProperties();
+    RankingVersion rankingVersion = new RankingVersion();
+    RsEventRepository rsEventRepository = stub(RsEventRepository.class, "findAllRanked", rows);
+    rsEventLeaderboard = new RsEventLeaderboard(rsEventRepository, rankingVersion, properties);
+    rsEventLeaderboard.warmUp();
+    ranked = rsEventLeaderboard.getEntries();
+    TradeOnlyRepository tradeOnlyRepository = stub(TradeOnlyRepository.class, "findAllWithRsEvent", trades);
+    RankingSnapshotPublisher rankingSnapshotPublisher =
+        new RankingSnapshotPublisher(rsEventLeaderboard, tradeOnlyRepository, rankingVersion, properties);
+    // the ranking reads only go through the leaderboard and the snapshot publisher, anything else
+    // the service touches fails the benchmark
+    JdbcTemplate jdbcTemplate = new JdbcTemplate();
+    TransactionTemplate transactionTemplate = new TransactionTemplate();
+    ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+    rsService = new RsService(rsEventRepository, stub(UserRepository.class), stub(VoteRepository.class),
+        tradeOnlyRepository, stub(TradeRepository.class), rsEventLeaderboard, rankingSnapshotPublisher,
+        new VoteDeltaBuffer(jdbcTemplate, transactionTemplate, cacheManager, properties),
+        new RankAuctionBook(tradeOnlyRepository, transactionTemplate, properties),
+        new TrendingCounters(properties),
+        new ShardedVoteCounter(jdbcTemplate, transactionTemplate, stub(VoteShardRepository.class), cacheManager,
+            properties));
+
+    Map<Integer, Integer> votes = rows.stream()
+        .collect(Collectors.toMap(RsEventSummary::getId, RsEventSummary::getVoteNum));
+    baselineRanked = rows.stream()
+        .sorted(Comparator.comparing(RsEventSummary::getVoteNum).reversed())
+        .map(row -> RsEvent.builder().eventName(row.getEventName()).keyword(row.getKeyword())
+            .userId(row.getId()).voteNum(row.getVoteNum()).build())
+        .collect(Collectors.toList());
+    baselineTrades = trades;
+    baselineTradeEvents = trades.stream()
+        .map(trade -> trade.getRsEvent().getId())
+        .sorted(Comparator.comparing(votes::get).reversed())
+        .map(id -> RsEvent.builder().eventName("event " + id).keyword("keyword").userId(id).voteNum(votes.get(id)).build())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * The merge /rs/list did before the ranking was kept in memory: every bought event inserted
+   * into the full vote ranking, then duplicates dropped by name. The ranking is copied first, as
+   * the baseline built it anew on every request.
+   */
+  @Benchmark
+  public List<RsEvent> mergePaidSlotsBaseline() {
+    return addTradeRsInToRsEvent(null, baselineTrades, baselineTradeEvents, new ArrayList<>(baselineRanked));
+  }
+
+  /** Pins the bought ranks into the vote ranking, what every snapshot rebuild does. */
+  @Benchmark
+  public RankingSnapshot mergePaidSlots() {
+    return RankingSnapshot.merge(0, ranked, paid);
+  }
+
+  /** A page of /rs/list while the snapshot is up to date. */
+  @Benchmark
+  public List<RsEvent> getRsEventsBetween() {
+    return rsService.getRsEventsBetween(1, PAGE_SIZE);
+  }
+
+  /** A page of /rs/list right after a vote, so the snapshot is rebuilt first. */
+  @Benchmark
+  public List<RsEvent> getRsEventsBetweenAfterVote() {
+    rsEventLeaderboard.addVotes(1 + random.nextInt(events), 1);
+    return rsService.getRsEventsBetween(1, PAGE_SIZE);
+  }
+
+  // copied from RsService as it was before the ranking was kept in memory
+  private List<RsEvent> addTradeRsInToRsEvent(Integer start, List<TradeOnlyDto> tradeOnlyDtos, List<RsEvent> tradeEvents, List<RsEvent> rsEvents) {
+    for (int index = 0; index < tradeOnlyDtos.size(); index ++) {
+      int rankIndex = tradeOnlyDtos.get(index).getRank() - 1;
+      if(start != null) {
+        rankIndex += start - 1;
+      }
+      rsEvents.add(rankIndex, tradeEvents.get(index));
+    }
+    rsEvents = rsEvents.stream().filter(distinctByKey(RsEvent::getEventName)).collect(Collectors.toList());
+    return rsEvents;
+  }
+
+  private static <T> Predicate<T> distinctByKey(Function<? super T, ?> keyExtractor) {
+    Map<Object,Boolean> seen = new ConcurrentHashMap<>();
+    return t -> ((ConcurrentHashMap) seen).putIfAbsent(keyExtractor.apply(t), Boolean.TRUE) == null;
+  }
+
+  private static <T> T stub(Class<T> repository) {
+    return stub(repository, null, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T stub(Class<T> repository, String method, Object result) {
+    return (T) Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[] {repository},
+        (proxy, invoked, args) -> {
+          if (invoked.getName().equals(method)) {
+            return result;
+          }
+          throw new UnsupportedOperationException(invoked.getName());
+        });
+  }
+
+  private static class Row implements RsEventSummary {
+    private final int id;
+    private final String eventName;
+    private final String keyword;
+    private final int voteNum;
+
+    Row(int id, String eventName, String keyword, int voteNum) {
+      this.id = id;
+      this.eventName = eventName;
+      this.keyword = keyword;
+      this.voteNum = voteNum;
+    }
+
+    @Override
+    public int getId() {
+      return id;
+    }
+
+    @Override
+    public String getEventName() {
+      return eventName;
+    }
+
+    @Override
+    public String getKeyword() {
+      return keyword;
+    }
+
+    @Override
+    public int getVoteNum() {
+      return voteNum;
+    }
+  }
+}
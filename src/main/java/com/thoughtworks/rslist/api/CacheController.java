@@ -0,0 +1,37 @@
+package com.thoughtworks.rslist.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.thoughtworks.rslist.domain.CacheStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RestController
+public class CacheController {
+  @Autowired CacheManager cacheManager;
+
+  @GetMapping("/cache/stats")
+  public ResponseEntity<List<CacheStatistics>> getCacheStatistics() {
+    List<CacheStatistics> statistics = cacheManager.getCacheNames().stream()
+        .map(name -> {
+          Cache<?, ?> cache = (Cache<?, ?>) cacheManager.getCache(name).getNativeCache();
+          CacheStats stats = cache.stats();
+          return CacheStatistics.builder()
+              .name(name)
+              .size(cache.estimatedSize())
+              .hitCount(stats.hitCount())
+              .missCount(stats.missCount())
+              .hitRate(stats.hitRate())
+              .evictionCount(stats.evictionCount())
+              .build();
+        })
+        .collect(Collectors.toList());
+    return ResponseEntity.ok(statistics);
+  }
+}
@@ -0,0 +1,61 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.exception.DatabaseBusyException;
+import com.thoughtworks.rslist.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Streams the exports on an async thread. They get {@code rs.export.timeout} of their own
+ * instead of the default async request timeout every other async request runs with, and at most
+ * {@code rs.export.max-concurrent} of them run at once; the rest are answered with 503.
+ */
+@RestController
+public class ExportController {
+  static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+  @Autowired ExportService exportService;
+  @Autowired RsListProperties properties;
+  private Semaphore running;
+
+  @PostConstruct
+  public void init() {
+    running = new Semaphore(properties.getExport().getMaxConcurrent());
+  }
+
+  @GetMapping("/export/rs/list")
+  public WebAsyncTask<Void> exportRanking(HttpServletResponse response) {
+    return export(response, exportService::exportRanking);
+  }
+
+  @GetMapping("/export/votes")
+  public WebAsyncTask<Void> exportVotes(HttpServletResponse response) {
+    return export(response, exportService::exportVotes);
+  }
+
+  private WebAsyncTask<Void> export(HttpServletResponse response, Consumer<OutputStream> export) {
+    return new WebAsyncTask<>(properties.getExport().getTimeout().toMillis(), () -> {
+      if (!running.tryAcquire()) {
+        throw new DatabaseBusyException("too many exports are running");
+      }
+      try {
+        response.setContentType(NDJSON.toString());
+        export.accept(response.getOutputStream());
+        response.flushBuffer();
+        return null;
+      } finally {
+        running.release();
+      }
+    });
+  }
+}
@@ -1,43 +1,108 @@
 package com.thoughtworks.rslist.api;
 
 import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.domain.RsEventRank;
+import com.thoughtworks.rslist.domain.RsEventTrend;
 import com.thoughtworks.rslist.domain.Trade;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteIngestionStats;
+import com.thoughtworks.rslist.domain.VoteResult;
 import com.thoughtworks.rslist.exception.AmountIsLessException;
 import com.thoughtworks.rslist.exception.Error;
 import com.thoughtworks.rslist.exception.RequestNotValidException;
+import com.thoughtworks.rslist.service.RankingChangeBroadcaster;
+import com.thoughtworks.rslist.service.RankingPayload;
+import com.thoughtworks.rslist.service.RankingPayloadCache;
 import com.thoughtworks.rslist.service.RsService;
+import com.thoughtworks.rslist.service.VoteIngestionPipeline;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
 
 @RestController
 @Validated
 public class RsController {
   @Autowired RsService rsService;
+  @Autowired VoteIngestionPipeline voteIngestionPipeline;
+  @Autowired RankingChangeBroadcaster rankingChangeBroadcaster;
+  @Autowired RankingPayloadCache rankingPayloadCache;
 
+  /**
+   * With the in-memory ranking the body is written from bytes serialized once per ranking
+   * version, gzipped when the client accepts it. The ETag is checked once the window is validated
+   * but before any body is looked up, and differs per encoding, so a cache never hands gzipped bytes to a client that did not
+   * ask for them.
+   */
   @GetMapping("/rs/list")
-  public ResponseEntity<List<RsEvent>> getRsEventListBetween(
-      @RequestParam(required = false) Integer start, @RequestParam(required = false) Integer end) {
+  public ResponseEntity<?> getRsEventListBetween(
+      @RequestParam(required = false) Integer start, @RequestParam(required = false) Integer end,
+      WebRequest request, HttpServletResponse servletResponse) {
+    if (rankingPayloadCache.isEnabled()) {
+      servletResponse.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      boolean gzip = acceptsGzip(request);
+      if (request.checkNotModified(rankingPayloadCache.getETag(start, end, gzip))) {
+        return null;
+      }
+      RankingPayload payload = rankingPayloadCache.get(start, end);
+      ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+      if (gzip) {
+        return response.eTag(payload.getGzipETag())
+            .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+            .body(payload.getGzip());
+      }
+      return response.eTag(payload.getETag()).body(payload.getJson());
+    }
+    return ResponseEntity.ok(rsService.getRsEventsBetween(start, end));
+  }
 
-    List<RsEvent> rsEvents = rsService.getRsEventsBetween(start, end);
-    if (start == null || end == null) {
-      return ResponseEntity.ok(rsEvents);
+  /**
+   * Server-sent events named "ranking": the whole ranking first, then only the events whose rank
+   * or vote count changed, at most once per {@code rs.ranking.push-interval}.
+   */
+  @GetMapping(value = "/rs/list/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<SseEmitter> streamRankingChanges() throws IOException {
+    if (!rankingChangeBroadcaster.isEnabled()) {
+      return ResponseEntity.notFound().build();
     }
-    return ResponseEntity.ok(rsEvents.subList(start - 1, end));
+    return ResponseEntity.ok(rankingChangeBroadcaster.subscribe());
+  }
+
+  /** Events with the most votes in the last {@code window} minutes. */
+  @GetMapping("/rs/trending")
+  public ResponseEntity<List<RsEventTrend>> getTrending(
+      @RequestParam(defaultValue = "5") int window, @RequestParam(defaultValue = "10") int size) {
+    return ResponseEntity.ok(rsService.getTrending(Duration.ofMinutes(window), size));
   }
 
   @GetMapping("/rs/{index}")
-  public ResponseEntity<RsEvent> getRsEvent(@PathVariable int index) {
-    List<RsEvent> rsEvents = rsService.getRsEvents();
-    if (index < 1 || index > rsEvents.size()) {
-      throw new RequestNotValidException("invalid index");
+  public ResponseEntity<RsEvent> getRsEvent(@PathVariable int index, WebRequest request) {
+    String eTag = rsService.getRankingETag();
+    if (eTag != null && request.checkNotModified(eTag)) {
+      return null;
     }
-    return ResponseEntity.ok(rsEvents.get(index - 1));
+    return ResponseEntity.ok(rsService.getRsEvent(index));
+  }
+
+  @GetMapping("/rs/{id}/rank")
+  public ResponseEntity<RsEventRank> getRsEventRank(@PathVariable int id, WebRequest request) {
+    String eTag = rsService.getRankingETag();
+    if (eTag != null && request.checkNotModified(eTag)) {
+      return null;
+    }
+    return ResponseEntity.ok(new RsEventRank(id, rsService.getRank(id)));
   }
 
   @PostMapping("/rs/event")
@@ -52,10 +117,27 @@ public class RsController {
 
   @PostMapping("/rs/vote/{id}")
   public ResponseEntity vote(@PathVariable int id, @RequestBody Vote vote) {
+    if (voteIngestionPipeline.isEnabled()) {
+      vote.setRsEventId(id);
+      if (!voteIngestionPipeline.submit(vote)) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+      }
+      return ResponseEntity.accepted().build();
+    }
     rsService.vote(vote, id);
     return ResponseEntity.ok().build();
   }
 
+  @GetMapping("/rs/vote/stats")
+  public ResponseEntity<VoteIngestionStats> getVoteIngestionStats() {
+    return ResponseEntity.ok(voteIngestionPipeline.getStats());
+  }
+
+  @PostMapping("/rs/votes")
+  public ResponseEntity<List<VoteResult>> voteAll(@RequestBody List<Vote> votes) {
+    return ResponseEntity.ok(rsService.voteAll(votes));
+  }
+
   @PostMapping("/rs/buy/{id}")
   public ResponseEntity buy(@PathVariable int id, @RequestBody Trade trade){
     rsService.buy(trade, id);
@@ -63,6 +145,37 @@ public class RsController {
   }
 
 
+  /** Whether Accept-Encoding lists gzip, or *, with a quality above 0. */
+  private static boolean acceptsGzip(WebRequest request) {
+    String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Double gzip = null;
+    Double any = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      double quality = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.toLowerCase(Locale.ROOT).startsWith("q=")) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2).trim());
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      if (name.equals("gzip") || name.equals("x-gzip")) {
+        gzip = quality;
+      } else if (name.equals("*")) {
+        any = quality;
+      }
+    }
+    return gzip != null ? gzip > 0 : any != null && any > 0;
+  }
+
   @ExceptionHandler({RequestNotValidException.class})
   public ResponseEntity<Error> handleRequestErrorHandler(RequestNotValidException e) {
     Error error = new Error();
@@ -1,10 +1,14 @@
 package com.thoughtworks.rslist.api;
 
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteRecordPage;
+import com.thoughtworks.rslist.exception.Error;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
 import com.thoughtworks.rslist.repository.VoteRepository;
 import com.thoughtworks.rslist.service.VoteService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -13,13 +17,36 @@ import java.util.List;
 
 @RestController
 public class VoteController {
+  static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
   @Autowired VoteRepository voteRepository;
   @Autowired
   VoteService voteService;
+
+  /**
+   * Pages through a user's votes for an event, oldest first. Pass the X-Next-Cursor header of
+   * the previous page as {@code cursor} to continue; {@code pageIndex} is still accepted but
+   * gets slower the deeper it goes.
+   */
   @GetMapping("/voteRecord")
   public ResponseEntity<List<Vote>> getVoteRecord(
-      @RequestParam int userId, @RequestParam int rsEventId, @RequestParam int pageIndex) {
-    List<Vote> votes = voteService.getVoteRecord(userId, rsEventId, pageIndex);
-    return ResponseEntity.ok(votes);
+      @RequestParam int userId, @RequestParam int rsEventId,
+      @RequestParam(required = false) Integer pageIndex, @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "" + VoteService.DEFAULT_PAGE_SIZE) int pageSize) {
+    VoteRecordPage page = pageIndex != null && cursor == null
+        ? voteService.getVoteRecord(userId, rsEventId, pageIndex, pageSize)
+        : voteService.getVoteRecordAfter(userId, rsEventId, cursor, pageSize);
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (page.getNextCursor() != null) {
+      response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+    }
+    return response.body(page.getVotes());
+  }
+
+  @ExceptionHandler({RequestNotValidException.class})
+  public ResponseEntity<Error> handleRequestErrorHandler(RequestNotValidException e) {
+    Error error = new Error();
+    error.setError(e.getMessage());
+    return ResponseEntity.badRequest().body(error);
   }
 }
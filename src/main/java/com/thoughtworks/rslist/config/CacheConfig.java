@@ -0,0 +1,28 @@
+package com.thoughtworks.rslist.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Caches users and rs events looked up by id. Evictions are deferred until the surrounding
+ * transaction commits, so a reader cannot put the old row back into the cache in between. The
+ * cache interceptor runs outside the {@link DatabaseBulkhead}, so hits do not take a permit.
+ */
+@Configuration
+@EnableCaching(order = DatabaseBulkhead.ORDER - 1)
+public class CacheConfig {
+  public static final String USERS = "users";
+  public static final String RS_EVENTS = "rsEvents";
+
+  @Bean
+  public CacheManager cacheManager(RsListProperties properties) {
+    CaffeineCacheManager cacheManager = new CaffeineCacheManager(USERS, RS_EVENTS);
+    cacheManager.setCaffeine(Caffeine.from(properties.getCache().getSpec()).recordStats());
+    return new TransactionAwareCacheManagerProxy(cacheManager);
+  }
+}
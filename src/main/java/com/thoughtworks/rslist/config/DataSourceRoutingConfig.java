@@ -0,0 +1,57 @@
+package com.thoughtworks.rslist.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+/**
+ * With {@code rs.replica.enabled}, replaces the auto-configured data source with one that sends
+ * the read-only transactions run {@link ReadWriteRoutingDataSource#onReplica} to a replica pool of
+ * its own and the rest to the spring.datasource pool. See {@link ReadWriteRoutingDataSource}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "rs.replica", name = "enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+  private HikariDataSource primary;
+  private HikariDataSource replica;
+
+  @Bean
+  public DataSource dataSource(DataSourceProperties dataSourceProperties, RsListProperties properties) {
+    primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    primary.setPoolName("primary");
+    replica = replica(properties.getReplica());
+    return new LazyConnectionDataSourceProxy(
+        new ReadWriteRoutingDataSource(primary, replica, properties.getReplica().getRetryAfter()));
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (replica != null) {
+      replica.close();
+    }
+    if (primary != null) {
+      primary.close();
+    }
+  }
+
+  private static HikariDataSource replica(RsListProperties.Replica properties) {
+    HikariDataSource replica = new HikariDataSource();
+    replica.setPoolName("replica");
+    replica.setJdbcUrl(properties.getUrl());
+    replica.setUsername(properties.getUsername());
+    replica.setPassword(properties.getPassword());
+    if (properties.getDriverClassName() != null) {
+      replica.setDriverClassName(properties.getDriverClassName());
+    }
+    replica.setMaximumPoolSize(properties.getMaximumPoolSize());
+    replica.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+    replica.setReadOnly(true);
+    return replica;
+  }
+}
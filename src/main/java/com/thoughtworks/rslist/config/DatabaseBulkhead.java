@@ -0,0 +1,173 @@
+package com.thoughtworks.rslist.config;
+
+import com.thoughtworks.rslist.exception.DatabaseBusyException;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many threads work with each connection pool at once, so that request concurrency,
+ * which is unbounded with virtual threads, does not turn into a queue in front of the pool. A
+ * permit is taken by the outermost transactional method, TransactionTemplate or repository call
+ * that gets past the cache, and held until it returns; with a replica, calls routed to it take
+ * replica permits. Request threads wait at most {@code rs.execution.bulkhead.max-wait} and are
+ * answered with 503 after that; background work just waits for its turn. Exports hold their
+ * connection for the whole download and are limited by {@code rs.export.max-concurrent} instead.
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(DatabaseBulkhead.ORDER)
+public class DatabaseBulkhead {
+  /**
+   * Inside the cache interceptor, so calls answered from the cache never wait for a permit, and
+   * outside the transaction interceptor, so no thread holds a connection while it waits.
+   */
+  static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 2;
+  private static final int DEFAULT_POOL_SIZE = 10;
+  private static final ThreadLocal<Boolean> HOLDING = new ThreadLocal<>();
+
+  private final boolean enabled;
+  private final long maxWaitNanos;
+  private final Pool primary;
+  private final ReadWriteRoutingDataSource routing;
+  private final Pool replica;
+  private final AtomicLong rejected = new AtomicLong();
+
+  @Autowired
+  public DatabaseBulkhead(RsListProperties properties, DataSource dataSource) {
+    RsListProperties.Bulkhead bulkhead = properties.getExecution().getBulkhead();
+    this.enabled = bulkhead.isEnabled();
+    this.maxWaitNanos = bulkhead.getMaxWait().toNanos();
+    this.routing = routing(dataSource);
+    int exports = properties.getExport().getMaxConcurrent();
+    if (routing == null) {
+      this.primary = new Pool("primary", permits(bulkhead.getMaxConcurrent(), dataSource, exports));
+      this.replica = null;
+    } else {
+      this.primary = new Pool("primary", permits(bulkhead.getMaxConcurrent(), routing.getPrimary(), exports));
+      this.replica = new Pool("replica", permits(bulkhead.getMaxConcurrent(), routing.getReplica(), 0));
+    }
+  }
+
+  DatabaseBulkhead(boolean enabled, int permits, long maxWaitNanos) {
+    this(enabled, permits, null, 0, maxWaitNanos);
+  }
+
+  DatabaseBulkhead(boolean enabled, int primaryPermits, ReadWriteRoutingDataSource routing, int replicaPermits,
+                   long maxWaitNanos) {
+    this.enabled = enabled;
+    this.maxWaitNanos = maxWaitNanos;
+    this.primary = new Pool("primary", primaryPermits);
+    this.routing = routing;
+    this.replica = routing == null ? null : new Pool("replica", replicaPermits);
+  }
+
+  @Around("(execution(* org.springframework.data.repository.Repository+.*(..)) "
+      + "|| execution(* org.springframework.transaction.support.TransactionOperations+.execute*(..)) "
+      + "|| @annotation(org.springframework.transaction.annotation.Transactional) "
+      + "|| @within(org.springframework.transaction.annotation.Transactional)) "
+      + "&& !within(com.thoughtworks.rslist.service.ExportService)")
+  public Object guard(ProceedingJoinPoint joinPoint) throws Throwable {
+    if (!enabled || HOLDING.get() != null) {
+      return joinPoint.proceed();
+    }
+    Semaphore semaphore = pool().semaphore;
+    if (RequestContextHolder.getRequestAttributes() == null) {
+      semaphore.acquire();
+    } else if (!semaphore.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+      rejected.incrementAndGet();
+      throw new DatabaseBusyException("database is busy");
+    }
+    HOLDING.set(Boolean.TRUE);
+    try {
+      return joinPoint.proceed();
+    } finally {
+      HOLDING.remove();
+      semaphore.release();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public List<Pool> getPools() {
+    return replica == null ? Collections.singletonList(primary) : Arrays.asList(primary, replica);
+  }
+
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  private Pool pool() {
+    return replica != null && ReadWriteRoutingDataSource.isRoutedToReplica() && routing.isReplicaAvailable()
+        ? replica : primary;
+  }
+
+  private static ReadWriteRoutingDataSource routing(DataSource dataSource) {
+    try {
+      if (dataSource.isWrapperFor(ReadWriteRoutingDataSource.class)) {
+        return dataSource.unwrap(ReadWriteRoutingDataSource.class);
+      }
+    } catch (SQLException e) {
+      log.warn("could not look for a replica behind the data source", e);
+    }
+    return null;
+  }
+
+  private static int permits(int maxConcurrent, DataSource dataSource, int reserved) {
+    if (maxConcurrent > 0) {
+      return maxConcurrent;
+    }
+    int poolSize = DEFAULT_POOL_SIZE;
+    try {
+      if (dataSource.isWrapperFor(HikariDataSource.class)) {
+        poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+      }
+    } catch (SQLException e) {
+      log.warn("could not read the connection pool size", e);
+    }
+    return Math.max(1, poolSize - reserved);
+  }
+
+  public static class Pool {
+    private final String name;
+    private final int permits;
+    private final Semaphore semaphore;
+
+    Pool(String name, int permits) {
+      this.name = name;
+      this.permits = permits;
+      this.semaphore = new Semaphore(permits, true);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getPermits() {
+      return permits;
+    }
+
+    public int getInUse() {
+      return permits - semaphore.availablePermits();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.thoughtworks.rslist.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * With {@code rs.execution.mode=virtual}, Tomcat and the MVC async handlers run every task on a
+ * new virtual thread, so a request blocked on the {@link DatabaseBulkhead} or the database does
+ * not hold a worker thread. The executor is looked up reflectively because the code is compiled
+ * for Java 8; on an older JDK the platform thread pools stay in place.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "rs.execution", name = "mode", havingValue = "virtual")
+public class ExecutionConfig implements WebMvcConfigurer {
+  private final ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+
+  @Bean
+  public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+    return factory -> {
+      if (virtualThreads != null) {
+        factory.addProtocolHandlerCustomizers(protocolHandler -> protocolHandler.setExecutor(virtualThreads));
+      }
+    };
+  }
+
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    if (virtualThreads != null) {
+      configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreads));
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (virtualThreads != null) {
+      virtualThreads.shutdown();
+    }
+  }
+
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      log.warn("virtual threads need JDK 21 or later, keeping platform threads");
+      return null;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.thoughtworks.rslist.config;
+
+import com.thoughtworks.rslist.service.RankingChangeBroadcaster;
+import com.thoughtworks.rslist.service.RankingSnapshotPublisher;
+import com.thoughtworks.rslist.service.RsEventLeaderboard;
+import com.thoughtworks.rslist.service.VoteDeltaBuffer;
+import com.thoughtworks.rslist.service.VoteIngestionPipeline;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Meters next to the http.server.requests timers Spring Boot records for every endpoint: the
+ * {@code @Timed} service operations, the repository calls timed by {@link RepositoryMetricsAspect}
+ * and gauges over the state the services keep in memory. Everything is scraped from
+ * /actuator/prometheus.
+ */
+@Configuration
+public class MetricsConfig {
+  @Bean
+  public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+    return new TimedAspect(meterRegistry);
+  }
+
+  @Bean
+  public MeterBinder rankingMetrics(RsEventLeaderboard rsEventLeaderboard,
+                                    RankingSnapshotPublisher rankingSnapshotPublisher,
+                                    RankingChangeBroadcaster rankingChangeBroadcaster) {
+    return registry -> {
+      if (rsEventLeaderboard.isEnabled()) {
+        Gauge.builder("rs.ranking.size", rsEventLeaderboard, RsEventLeaderboard::size)
+            .description("Events in the in-memory ranking")
+            .register(registry);
+      }
+      Gauge.builder("rs.ranking.paid.slots", rankingSnapshotPublisher,
+          RankingSnapshotPublisher::getPaidSlotCount)
+          .description("Ranks bought through /rs/buy")
+          .register(registry);
+      Gauge.builder("rs.ranking.subscribers", rankingChangeBroadcaster,
+          RankingChangeBroadcaster::getSubscriberCount)
+          .description("Open /rs/list/stream connections")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder databaseBulkheadMetrics(DatabaseBulkhead databaseBulkhead) {
+    return registry -> {
+      if (!databaseBulkhead.isEnabled()) {
+        return;
+      }
+      for (DatabaseBulkhead.Pool pool : databaseBulkhead.getPools()) {
+        Gauge.builder("rs.database.bulkhead.in.use", pool, DatabaseBulkhead.Pool::getInUse)
+            .description("Threads working with the database")
+            .tag("pool", pool.getName())
+            .register(registry);
+        Gauge.builder("rs.database.bulkhead.permits", pool, DatabaseBulkhead.Pool::getPermits)
+            .tag("pool", pool.getName())
+            .register(registry);
+      }
+      FunctionCounter.builder("rs.database.bulkhead.rejected", databaseBulkhead, DatabaseBulkhead::getRejected)
+          .description("Requests answered with 503 because the database was busy")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder voteMetrics(VoteDeltaBuffer voteDeltaBuffer, VoteIngestionPipeline voteIngestionPipeline) {
+    return registry -> {
+      if (voteDeltaBuffer.isEnabled()) {
+        Gauge.builder("rs.vote.write.behind.pending", voteDeltaBuffer, VoteDeltaBuffer::getPending)
+            .description("Votes credited in memory but not yet written to rs_event")
+            .register(registry);
+      }
+      if (voteIngestionPipeline.isEnabled()) {
+        Gauge.builder("rs.vote.queue.depth", voteIngestionPipeline,
+            pipeline -> pipeline.getStats().getQueueDepth())
+            .description("Votes accepted and waiting to be written")
+            .register(registry);
+        FunctionCounter.builder("rs.vote.queue.rejected", voteIngestionPipeline,
+            pipeline -> pipeline.getStats().getRejected())
+            .description("Votes turned away because their queue was full")
+            .register(registry);
+      }
+    };
+  }
+}
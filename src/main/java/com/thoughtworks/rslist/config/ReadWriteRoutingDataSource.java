@@ -0,0 +1,136 @@
+package com.thoughtworks.rslist.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Hands out replica connections to read-only transactions run {@link #onReplica} or in a
+ * {@link ReplicaRead} method and primary connections everywhere else, so lookups on write paths and cached entity loads never see the
+ * replica's lag. The transaction is only marked read-only once it has begun, so this has to sit
+ * behind a LazyConnectionDataSourceProxy that asks for the connection at the first statement.
+ * When the replica cannot be reached, reads use the primary until {@code retryAfter} has passed.
+ * State that is loaded once and then kept current from committed writes must be loaded
+ * {@link #onPrimary}, since a lagging replica would leave it behind for good.
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+  enum Route {
+    PRIMARY, REPLICA
+  }
+
+  private static final ThreadLocal<Route> ROUTE = new ThreadLocal<>();
+
+  private final DataSource primary;
+  private final DataSource replica;
+  private final long retryAfterNanos;
+  private volatile long replicaDownUntil;
+  private volatile boolean replicaDown;
+
+  public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, Duration retryAfter) {
+    this.primary = primary;
+    this.replica = replica;
+    this.retryAfterNanos = retryAfter.toNanos();
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(Route.PRIMARY, primary);
+    targets.put(Route.REPLICA, replica);
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+    afterPropertiesSet();
+  }
+
+  /** Runs the read-only transactions the read opens on the replica while it is available. */
+  public static <T> T onReplica(Supplier<T> read) {
+    return on(Route.REPLICA, read);
+  }
+
+  /**
+   * Runs the read on the primary even within {@link #onReplica}, unless its transaction already
+   * holds a replica connection.
+   */
+  public static <T> T onPrimary(Supplier<T> read) {
+    return on(Route.PRIMARY, read);
+  }
+
+  /** Whether transactions begun now are meant for the replica, whether or not it is available. */
+  public static boolean isRoutedToReplica() {
+    return ROUTE.get() == Route.REPLICA;
+  }
+
+  private static <T> T on(Route route, Supplier<T> read) {
+    Route previous = enter(route);
+    try {
+      return read.get();
+    } finally {
+      restore(previous);
+    }
+  }
+
+  static Route enter(Route route) {
+    Route previous = ROUTE.get();
+    ROUTE.set(route);
+    return previous;
+  }
+
+  static void restore(Route previous) {
+    if (previous == null) {
+      ROUTE.remove();
+    } else {
+      ROUTE.set(previous);
+    }
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return ROUTE.get() == Route.REPLICA && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+        && isReplicaAvailable()
+        ? Route.REPLICA : Route.PRIMARY;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (determineCurrentLookupKey() == Route.PRIMARY) {
+      return primary.getConnection();
+    }
+    try {
+      return determineTargetDataSource().getConnection();
+    } catch (SQLException e) {
+      markReplicaDown(e);
+      return primary.getConnection();
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return primary.getConnection(username, password);
+  }
+
+  public DataSource getPrimary() {
+    return primary;
+  }
+
+  public DataSource getReplica() {
+    return replica;
+  }
+
+  public boolean isReplicaAvailable() {
+    return !replicaDown || System.nanoTime() - replicaDownUntil >= 0;
+  }
+
+  private void markReplicaDown(SQLException e) {
+    if (isReplicaAvailable()) {
+      log.warn("replica is unavailable, reading from the primary for {} ms",
+          Duration.ofNanos(retryAfterNanos).toMillis(), e);
+    }
+    replicaDownUntil = System.nanoTime() + retryAfterNanos;
+    replicaDown = true;
+  }
+}
@@ -0,0 +1,16 @@
+package com.thoughtworks.rslist.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs the annotated method {@link ReadWriteRoutingDataSource#onReplica}. Unlike calling
+ * onReplica inside the method, this also covers the read-only transaction the method itself is
+ * annotated with, and the {@link DatabaseBulkhead} counts it against the replica pool.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReplicaRead {
+}
@@ -0,0 +1,25 @@
+package com.thoughtworks.rslist.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/** Routes {@link ReplicaRead} methods before the bulkhead and the transaction see the call. */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ReplicaReadAspect {
+  @Around("@annotation(com.thoughtworks.rslist.config.ReplicaRead)")
+  public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+    ReadWriteRoutingDataSource.Route previous =
+        ReadWriteRoutingDataSource.enter(ReadWriteRoutingDataSource.Route.REPLICA);
+    try {
+      return joinPoint.proceed();
+    } finally {
+      ReadWriteRoutingDataSource.restore(previous);
+    }
+  }
+}
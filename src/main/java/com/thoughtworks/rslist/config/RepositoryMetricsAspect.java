@@ -0,0 +1,81 @@
+package com.thoughtworks.rslist.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Times every call into a Spring Data repository as {@code rs.repository}, tagged with the
+ * repository interface and method, so slow queries show up next to the service timers. Timers
+ * are looked up once per repository, method and outcome and then reused.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+  static final String METRIC_NAME = "rs.repository";
+  private static final String REPOSITORY_PACKAGE = "com.thoughtworks.rslist.repository";
+
+  private final MeterRegistry meterRegistry;
+  private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+  public RepositoryMetricsAspect(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+  public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String exception = "none";
+    try {
+      return joinPoint.proceed();
+    } catch (Throwable e) {
+      exception = e.getClass().getSimpleName();
+      throw e;
+    } finally {
+      Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+      sample.stop(timer(new TimerKey(joinPoint.getThis().getClass(), method, exception)));
+    }
+  }
+
+  private Timer timer(TimerKey key) {
+    // get first: on Java 8 computeIfAbsent locks the bin even when the timer is already there
+    Timer timer = timers.get(key);
+    if (timer != null) {
+      return timer;
+    }
+    return timers.computeIfAbsent(key, missing -> Timer.builder(METRIC_NAME)
+        .tag("repository", repositoryName(missing.proxyClass))
+        .tag("method", missing.method.getName())
+        .tag("exception", missing.exception)
+        .register(meterRegistry));
+  }
+
+  /** The application's repository interface behind a proxy, not the Spring Data base type. */
+  private static String repositoryName(Class<?> proxyClass) {
+    for (Class<?> candidate : proxyClass.getInterfaces()) {
+      if (candidate.getName().startsWith(REPOSITORY_PACKAGE)) {
+        return candidate.getSimpleName();
+      }
+    }
+    return proxyClass.getSimpleName();
+  }
+
+  /** The proxy class tells repositories apart that share a Spring Data method like findById. */
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static class TimerKey {
+    private final Class<?> proxyClass;
+    private final Method method;
+    private final String exception;
+  }
+}
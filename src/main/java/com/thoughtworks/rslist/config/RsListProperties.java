@@ -0,0 +1,177 @@
+package com.thoughtworks.rslist.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "rs")
+public class RsListProperties {
+  private Ranking ranking = new Ranking();
+  private Vote vote = new Vote();
+  private Cache cache = new Cache();
+  private Trending trending = new Trending();
+  private Execution execution = new Execution();
+  private Replica replica = new Replica();
+  private Export export = new Export();
+
+  @Data
+  public static class Ranking {
+    /**
+     * Keep the vote ranking in memory instead of querying and sorting rsEvent on every read.
+     * Switch it off when several instances share one database, since every instance only sees
+     * its own writes.
+     */
+    private boolean inMemory = true;
+    /**
+     * How long changes are collected before the published /rs/list snapshot is rebuilt in the
+     * background; /rs/list lags the votes by up to this much. Zero rebuilds on the first read
+     * after every change instead, on the reading thread.
+     */
+    private Duration snapshotDebounce = Duration.ofMillis(50);
+    /**
+     * How long ranking changes are collected before /rs/list/stream subscribers get one message
+     * with all of them.
+     */
+    private Duration pushInterval = Duration.ofMillis(500);
+    /** How long a /rs/list/stream connection stays open before the client has to reconnect. */
+    private Duration streamTimeout = Duration.ofMinutes(30);
+  }
+
+  @Data
+  public static class Vote {
+    private WriteBehind writeBehind = new WriteBehind();
+    private Async async = new Async();
+    private Archive archive = new Archive();
+    private ShardedCounter shardedCounter = new ShardedCounter();
+  }
+
+  @Data
+  public static class WriteBehind {
+    /**
+     * Buffer the votes credited to each rs event in memory and add them to rsEvent.vote_num in
+     * batches instead of updating the row on every vote.
+     */
+    private boolean enabled = false;
+    private Duration flushInterval = Duration.ofSeconds(1);
+    /** Buffered votes across all events that trigger a flush before the interval is up. */
+    private long flushThreshold = 1000;
+  }
+
+  @Data
+  public static class Async {
+    /**
+     * Answer /rs/vote/{id} with 202 once the vote is queued and apply it in the background, or
+     * with 503 when the queue is full.
+     */
+    private boolean enabled = false;
+    /** Writer threads; all votes for one rs event go to the same writer. */
+    private int shards = 4;
+    /** Votes each shard can hold before new votes are refused. */
+    private int queueCapacity = 10000;
+    /** Most votes a writer applies in one transaction. */
+    private int batchSize = 100;
+    /**
+     * Tries of a batch that lost a deadlock or timed out waiting for a lock, after which its
+     * votes are applied one at a time so only the ones that keep failing are dropped.
+     */
+    private int maxAttempts = 3;
+  }
+
+  @Data
+  public static class Archive {
+    /**
+     * Periodically move votes older than the retention out of vote into per user, per event,
+     * per day rows in vote_rollup.
+     */
+    private boolean enabled = false;
+    private Duration retention = Duration.ofDays(30);
+    private Duration interval = Duration.ofHours(1);
+    /** Votes moved per transaction. */
+    private int chunkSize = 1000;
+  }
+
+  @Data
+  public static class ShardedCounter {
+    /**
+     * Credit votes to one of several counter rows per rs event instead of rsEvent.vote_num, so
+     * voters of the same event do not queue on one row lock. Ignored while write-behind is on.
+     */
+    private boolean enabled = false;
+    private int shards = 8;
+    /** How often the shards are folded back into rsEvent.vote_num. */
+    private Duration compactionInterval = Duration.ofSeconds(10);
+    /** How often the shards of deleted rs events are looked for and removed. */
+    private Duration orphanCleanupInterval = Duration.ofHours(1);
+  }
+
+  @Data
+  public static class Cache {
+    /** Caffeine spec for the user and rs event caches in front of findById. */
+    private String spec = "maximumSize=10000,expireAfterWrite=60s";
+  }
+
+  @Data
+  public static class Trending {
+    /** Width of one counter bucket; trending results move on once per bucket. */
+    private Duration bucket = Duration.ofSeconds(10);
+    /** Longest window /rs/trending can be asked for, which bounds the buckets kept per event. */
+    private Duration maxWindow = Duration.ofHours(1);
+  }
+
+  @Data
+  public static class Execution {
+    /**
+     * Threads the servlet container and Spring MVC async handlers run on. VIRTUAL needs JDK 21
+     * or later at runtime and falls back to PLATFORM otherwise.
+     */
+    private Mode mode = Mode.PLATFORM;
+    private Bulkhead bulkhead = new Bulkhead();
+
+    public enum Mode {
+      PLATFORM, VIRTUAL
+    }
+  }
+
+  @Data
+  public static class Bulkhead {
+    private boolean enabled = true;
+    /**
+     * Requests allowed into each connection pool at once; 0 uses the pool size, less the
+     * connections {@code rs.export.max-concurrent} leaves to exports on the primary.
+     */
+    private int maxConcurrent = 0;
+    /** How long a request waits for its turn before it is answered with 503. */
+    private Duration maxWait = Duration.ofSeconds(1);
+  }
+
+  @Data
+  public static class Replica {
+    /**
+     * Run the vote record and ranking page reads on a replica of the spring.datasource database.
+     * Everything else stays on the primary.
+     */
+    private boolean enabled = false;
+    private String url;
+    private String username;
+    private String password;
+    private String driverClassName;
+    private int maximumPoolSize = 10;
+    /** How long a read waits for a replica connection before it falls back to the primary. */
+    private Duration connectionTimeout = Duration.ofMillis(250);
+    /** How long reads stay on the primary after the replica could not be reached. */
+    private Duration retryAfter = Duration.ofSeconds(10);
+  }
+
+  @Data
+  public static class Export {
+    /** How long an /export download may take before the connection is closed. */
+    private Duration timeout = Duration.ofMinutes(30);
+    /**
+     * Downloads streamed at once, each holding a primary connection until it is done. Exports
+     * are kept out of the bulkhead and answered with 503 beyond this.
+     */
+    private int maxConcurrent = 2;
+  }
+}
@@ -0,0 +1,19 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RankedRsEvent {
+  private int rank;
+  private int rsEventId;
+  private String eventName;
+  private String keyword;
+  private int voteNum;
+  private boolean paid;
+}
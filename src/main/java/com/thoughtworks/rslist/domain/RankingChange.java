@@ -0,0 +1,21 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RankingChange {
+  private int rsEventId;
+  /** New 1-based position, 0 if the event left the ranking. */
+  private int rank;
+  /** Position in the previous message, 0 if the event is new. */
+  private int previousRank;
+  private String eventName;
+  private String keyword;
+  private int voteNum;
+}
@@ -0,0 +1,18 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RsEventTrend {
+  private int rsEventId;
+  private String eventName;
+  private String keyword;
+  /** Votes received within the requested window. */
+  private long voteNum;
+}
@@ -0,0 +1,22 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class VoteIngestionStats {
+  private boolean enabled;
+  private int queueDepth;
+  private int queueCapacity;
+  private long accepted;
+  private long rejected;
+  private long applied;
+  private long failed;
+  private long lastDrainLatencyMillis;
+  private long maxDrainLatencyMillis;
+}
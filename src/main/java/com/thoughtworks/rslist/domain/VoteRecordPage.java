@@ -0,0 +1,16 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class VoteRecordPage {
+  private List<Vote> votes;
+  /** Cursor that continues after the last vote of this page, or null if this is the last page. */
+  private String nextCursor;
+}
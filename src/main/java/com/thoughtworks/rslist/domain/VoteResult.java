@@ -0,0 +1,23 @@
+package com.thoughtworks.rslist.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class VoteResult {
+  private int userId;
+  private int rsEventId;
+  private boolean success;
+  private String error;
+
+  public static VoteResult accepted(Vote vote) {
+    return new VoteResult(vote.getUserId(), vote.getRsEventId(), true, null);
+  }
+
+  public static VoteResult rejected(Vote vote, String error) {
+    return new VoteResult(vote.getUserId(), vote.getRsEventId(), false, error);
+  }
+}
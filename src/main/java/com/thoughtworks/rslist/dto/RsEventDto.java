@@ -1,5 +1,6 @@
 package com.thoughtworks.rslist.dto;
 
+import com.thoughtworks.rslist.service.RsEventLeaderboardListener;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,7 +13,8 @@ import javax.persistence.*;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "rsEvent")
+@Table(name = "rsEvent", indexes = @Index(name = "idx_rs_event_vote_num", columnList = "voteNum desc, id"))
+@EntityListeners(RsEventLeaderboardListener.class)
 public class RsEventDto {
   @Id @GeneratedValue private int id;
   private String eventName;
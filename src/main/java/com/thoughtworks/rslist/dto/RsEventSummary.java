@@ -0,0 +1,15 @@
+package com.thoughtworks.rslist.dto;
+
+/**
+ * The columns of an rs event the ranking needs. Queries returning it select exactly these
+ * columns, so neither the event nor its user is loaded as an entity.
+ */
+public interface RsEventSummary {
+  int getId();
+
+  String getEventName();
+
+  String getKeyword();
+
+  int getVoteNum();
+}
@@ -1,6 +1,6 @@
 package com.thoughtworks.rslist.dto;
 
-
+import com.thoughtworks.rslist.service.TradeOnlyListener;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -9,7 +9,8 @@ import lombok.NoArgsConstructor;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "trade_only")
+@Table(name = "trade_only", indexes = @Index(name = "idx_trade_only_rank", columnList = "rank", unique = true))
+@EntityListeners(TradeOnlyListener.class)
 @Data
 @Builder
 @AllArgsConstructor
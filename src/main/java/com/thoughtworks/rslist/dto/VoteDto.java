@@ -7,9 +7,12 @@ import lombok.NoArgsConstructor;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import java.time.LocalDateTime;
 
@@ -18,9 +21,14 @@ import java.time.LocalDateTime;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "vote")
+@Table(name = "vote", indexes = {
+    @Index(name = "idx_vote_user_event_id", columnList = "user_id, rs_event_id, id"),
+    @Index(name = "idx_vote_local_date_time", columnList = "localDateTime")})
 public class VoteDto {
-  @Id @GeneratedValue private int id;
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vote_seq")
+  @SequenceGenerator(name = "vote_seq", sequenceName = "vote_seq", allocationSize = 50)
+  private int id;
 
   private LocalDateTime localDateTime;
 
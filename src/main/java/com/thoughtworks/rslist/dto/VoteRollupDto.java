@@ -0,0 +1,34 @@
+package com.thoughtworks.rslist.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.time.LocalDate;
+
+/** Votes a user gave an rs event on one day, summed up once they were moved out of vote. */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "vote_rollup",
+    uniqueConstraints = @UniqueConstraint(name = "uk_vote_rollup_user_event_day",
+        columnNames = {"userId", "rsEventId", "voteDay"}))
+public class VoteRollupDto {
+  @Id @GeneratedValue private int id;
+
+  private int userId;
+  private int rsEventId;
+  private LocalDate voteDay;
+  /** Sum of the votes' num. */
+  private int num;
+  /** Number of vote rows rolled up. */
+  private int voteCount;
+}
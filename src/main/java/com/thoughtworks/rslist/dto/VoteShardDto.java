@@ -0,0 +1,30 @@
+package com.thoughtworks.rslist.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/** One of the counter rows an rs event's votes are spread over until they are compacted. */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "rs_event_vote_shard",
+    uniqueConstraints = @UniqueConstraint(name = "uk_rs_event_vote_shard_event_shard",
+        columnNames = {"rsEventId", "shard"}))
+public class VoteShardDto {
+  @Id @GeneratedValue private int id;
+
+  private int rsEventId;
+  private int shard;
+  /** Votes credited to the shard and not yet folded into rsEvent.vote_num. */
+  private long voteNum;
+}
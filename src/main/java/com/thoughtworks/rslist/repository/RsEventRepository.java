@@ -1,14 +1,86 @@
 package com.thoughtworks.rslist.repository;
 
+import com.thoughtworks.rslist.config.CacheConfig;
 import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.RsEventSummary;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface RsEventRepository extends CrudRepository<RsEventDto, Integer> {
   List<RsEventDto> findAll();
 
+  @Override
+  @Cacheable(value = CacheConfig.RS_EVENTS, unless = "#result == null")
+  Optional<RsEventDto> findById(Integer id);
+
+  @Override
+  @CacheEvict(value = CacheConfig.RS_EVENTS, key = "#p0.id")
+  <S extends RsEventDto> S save(S rsEventDto);
+
+  @Override
+  @CacheEvict(value = CacheConfig.RS_EVENTS, key = "#p0")
+  void deleteById(Integer id);
+
+  @Override
+  @CacheEvict(value = CacheConfig.RS_EVENTS, key = "#p0.id")
+  void delete(RsEventDto rsEventDto);
+
+  @Override
+  @CacheEvict(value = CacheConfig.RS_EVENTS, allEntries = true)
+  void deleteAll();
+
+  @Transactional(readOnly = true)
+  @Query("select e.id as id, e.eventName as eventName, e.keyword as keyword, e.voteNum as voteNum "
+          + "from RsEventDto e order by e.voteNum desc, e.id")
+  List<RsEventSummary> findAllRanked();
+
+  @Transactional(readOnly = true)
+  List<RsEventSummary> findAllByIdIn(Collection<Integer> ids);
+
+  @Transactional(readOnly = true)
+  @Query(value = "select id, event_name as eventName, keyword, vote_num as voteNum from rs_event "
+          + "where id not in (:excludedIds) "
+          + "order by vote_num desc, id limit :limit offset :offset", nativeQuery = true)
+  List<RsEventSummary> findRankedPage(@Param("excludedIds") Collection<Integer> excludedIds,
+                                  @Param("offset") int offset, @Param("limit") int limit);
+
+  @Transactional(readOnly = true)
+  @Query(value = "select e.id, e.event_name as eventName, e.keyword, e.vote_num as voteNum from rs_event e "
+          + "where not exists (select 1 from trade_only t where t.rs_event_id = e.id) "
+          + "order by e.vote_num desc, e.id limit :limit offset :offset", nativeQuery = true)
+  List<RsEventSummary> findUnpaidRankedPage(@Param("offset") int offset, @Param("limit") int limit);
+
+  @Query("select e.voteNum from RsEventDto e where e.id = :id")
+  Optional<Integer> findVoteNumById(@Param("id") int id);
+
+  @Query("select count(e) from RsEventDto e "
+          + "where e.voteNum > :voteNum or (e.voteNum = :voteNum and e.id < :id)")
+  long countRankedAbove(@Param("voteNum") int voteNum, @Param("id") int id);
+
+  @Query("select count(e) from RsEventDto e where e.id in (:ids) "
+          + "and (e.voteNum > :voteNum or (e.voteNum = :voteNum and e.id < :id))")
+  long countRankedAboveAmong(@Param("ids") Collection<Integer> ids,
+                             @Param("voteNum") int voteNum, @Param("id") int id);
+
+  @Query("select e.id from RsEventDto e where e.id in :ids")
+  List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
   @Transactional
+  @CacheEvict(value = CacheConfig.RS_EVENTS, allEntries = true)
   void deleteAllByUserId(int userId);
+
+  @Transactional
+  @Modifying
+  @CacheEvict(value = CacheConfig.RS_EVENTS, key = "#p0")
+  @Query("update RsEventDto e set e.voteNum = e.voteNum + :voteNum where e.id = :id")
+  int addVotes(@Param("id") int id, @Param("voteNum") int voteNum);
 }
@@ -1,14 +1,20 @@
 package com.thoughtworks.rslist.repository;
 
 import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
 import java.util.List;
 import java.util.Optional;
 
 public interface TradeOnlyRepository extends CrudRepository<TradeOnlyDto, Integer> {
     List<TradeOnlyDto> findAll();
 
+    /** Reads the rank's row with a write lock held until the transaction ends. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
 //    @Query(name = "select * from trade t where e.rank = ?", nativeQuery = true)
     Optional<TradeOnlyDto> findByRank(int rank);
 
@@ -17,5 +23,13 @@ public interface TradeOnlyRepository extends CrudRepository<TradeOnlyDto, Intege
 
     Optional<TradeOnlyDto> findByRsEventId(int rsEventId);
 
+    /** Fetches the event and its user in the same query, both are eagerly loaded otherwise. */
+    @Query("select t from TradeOnlyDto t join fetch t.rsEvent e left join fetch e.user order by t.rank")
+    List<TradeOnlyDto> findAllWithRsEvent();
+
+    @Query("select t from TradeOnlyDto t join fetch t.rsEvent e left join fetch e.user"
+            + " where t.rank between :from and :to order by t.rank")
+    List<TradeOnlyDto> findByRankBetween(@Param("from") int from, @Param("to") int to);
+
 //    void deleteByRsEventId(int rsEventId);
 }
@@ -1,10 +1,60 @@
 package com.thoughtworks.rslist.repository;
 
+import com.thoughtworks.rslist.config.CacheConfig;
 import com.thoughtworks.rslist.dto.UserDto;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface UserRepository extends CrudRepository<UserDto, Integer> {
     List<UserDto> findAll();
+
+    @Override
+    @Cacheable(value = CacheConfig.USERS, unless = "#result == null")
+    Optional<UserDto> findById(Integer id);
+
+    @Override
+    @CacheEvict(value = CacheConfig.USERS, key = "#p0.id")
+    <S extends UserDto> S save(S userDto);
+
+    /** Deleting a user cascades to its rs events, so those are evicted as well. */
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.USERS, key = "#p0"),
+            @CacheEvict(value = CacheConfig.RS_EVENTS, allEntries = true)})
+    void deleteById(Integer id);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.USERS, key = "#p0.id"),
+            @CacheEvict(value = CacheConfig.RS_EVENTS, allEntries = true)})
+    void delete(UserDto userDto);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = CacheConfig.USERS, allEntries = true),
+            @CacheEvict(value = CacheConfig.RS_EVENTS, allEntries = true)})
+    void deleteAll();
+
+    /** Takes voteNum votes from the user if it has that many left; returns the rows updated. */
+    @Transactional
+    @Modifying
+    @CacheEvict(value = CacheConfig.USERS, key = "#p0")
+    @Query("update UserDto u set u.voteNum = u.voteNum - :voteNum where u.id = :id and u.voteNum >= :voteNum")
+    int debitVotes(@Param("id") int id, @Param("voteNum") int voteNum);
+
+    /** Gives back votes taken by {@link #debitVotes}; returns the rows updated. */
+    @Transactional
+    @Modifying
+    @CacheEvict(value = CacheConfig.USERS, key = "#p0")
+    @Query("update UserDto u set u.voteNum = u.voteNum + :voteNum where u.id = :id")
+    int refundVotes(@Param("id") int id, @Param("voteNum") int voteNum);
 }
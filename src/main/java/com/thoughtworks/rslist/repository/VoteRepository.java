@@ -2,11 +2,32 @@ package com.thoughtworks.rslist.repository;
 
 import com.thoughtworks.rslist.dto.VoteDto;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface VoteRepository extends PagingAndSortingRepository<VoteDto, Integer> {
     List<VoteDto> findAll();
     List<VoteDto> findAllByUserIdAndRsEventId(int userId, int rsEventId, Pageable pageable);
+
+    @Query(value = "select * from vote where user_id = :userId and rs_event_id = :rsEventId "
+            + "order by id limit :limit offset :offset", nativeQuery = true)
+    List<VoteDto> findPage(@Param("userId") int userId, @Param("rsEventId") int rsEventId,
+                           @Param("offset") int offset, @Param("limit") int limit);
+
+    @Query("select v from VoteDto v where v.user.id = :userId and v.rsEvent.id = :rsEventId "
+            + "and v.id > :afterId order by v.id")
+    List<VoteDto> findPageAfter(@Param("userId") int userId, @Param("rsEventId") int rsEventId,
+                                @Param("afterId") int afterId, Pageable limit);
+
+    List<VoteDto> findAllByLocalDateTimeBefore(LocalDateTime before, Pageable pageable);
+
+    @Modifying
+    @Query("delete from VoteDto v where v.id in :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,26 @@
+package com.thoughtworks.rslist.repository;
+
+import com.thoughtworks.rslist.dto.VoteRollupDto;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+public interface VoteRollupRepository extends CrudRepository<VoteRollupDto, Integer> {
+    List<VoteRollupDto> findAll();
+
+    Optional<VoteRollupDto> findByUserIdAndRsEventIdAndVoteDay(int userId, int rsEventId, LocalDate voteDay);
+
+    long countByUserIdAndRsEventId(int userId, int rsEventId);
+
+    List<VoteRollupDto> findAllByUserIdAndRsEventId(int userId, int rsEventId, Pageable pageable);
+
+    @Query("select r from VoteRollupDto r where r.userId = :userId and r.rsEventId = :rsEventId "
+            + "and r.id > :afterId order by r.id")
+    List<VoteRollupDto> findPageAfter(@Param("userId") int userId, @Param("rsEventId") int rsEventId,
+                                      @Param("afterId") int afterId, Pageable limit);
+}
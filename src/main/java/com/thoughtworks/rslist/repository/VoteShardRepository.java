@@ -0,0 +1,7 @@
+package com.thoughtworks.rslist.repository;
+
+import com.thoughtworks.rslist.dto.VoteShardDto;
+import org.springframework.data.repository.CrudRepository;
+
+public interface VoteShardRepository extends CrudRepository<VoteShardDto, Integer> {
+}
@@ -0,0 +1,141 @@
+package com.thoughtworks.rslist.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.rslist.domain.RankedRsEvent;
+import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import org.hibernate.Session;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+/**
+ * Writes the ranking and the vote history as newline delimited JSON while reading them from a
+ * database cursor. Only scalar columns are selected, so no entity is loaded or kept in the
+ * persistence context and memory does not grow with the number of rows.
+ */
+@Service
+public class ExportService {
+  private static final int FETCH_SIZE = 500;
+  private static final String UNPAID_RANKED_QUERY = "select e.id, e.eventName, e.keyword, e.voteNum "
+      + "from RsEventDto e where not exists (select t from TradeOnlyDto t where t.rsEvent = e) "
+      + "order by e.voteNum desc, e.id";
+  private static final String ROLLUPS_QUERY =
+      "select r.userId, r.rsEventId, r.num, r.voteDay from VoteRollupDto r order by r.id";
+  private static final String VOTES_QUERY =
+      "select v.user.id, v.rsEvent.id, v.num, v.localDateTime from VoteDto v order by v.id";
+
+  final TradeOnlyRepository tradeOnlyRepository;
+  final EntityManager entityManager;
+  final ObjectMapper objectMapper;
+  private volatile Integer fetchSize;
+
+  public ExportService(TradeOnlyRepository tradeOnlyRepository, EntityManager entityManager,
+                       ObjectMapper objectMapper) {
+    this.tradeOnlyRepository = tradeOnlyRepository;
+    this.entityManager = entityManager;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Writes the /rs/list ranking, bought ranks included. The events without a bought rank are
+   * streamed in order and the few bought ones are put in at their rank on the way.
+   */
+  @Transactional(readOnly = true)
+  public void exportRanking(OutputStream out) {
+    List<TradeOnlyDto> tradeOnlyDtos = tradeOnlyRepository.findAllWithRsEvent();
+    try (Stream<Object[]> organic = stream(UNPAID_RANKED_QUERY)) {
+      Iterator<Object[]> organicIterator = organic.iterator();
+      int paidIndex = 0;
+      int rank = 0;
+      while (organicIterator.hasNext() || paidIndex < tradeOnlyDtos.size()) {
+        rank++;
+        if (paidIndex < tradeOnlyDtos.size()
+            && (tradeOnlyDtos.get(paidIndex).getRank() <= rank || !organicIterator.hasNext())) {
+          RsEventDto rsEvent = tradeOnlyDtos.get(paidIndex++).getRsEvent();
+          writeLine(out, toRankedRsEvent(rank, new Object[] {
+              rsEvent.getId(), rsEvent.getEventName(), rsEvent.getKeyword(), rsEvent.getVoteNum()}, true));
+          continue;
+        }
+        writeLine(out, toRankedRsEvent(rank, organicIterator.next(), false));
+      }
+    }
+  }
+
+  /** Writes every vote, the rolled up days first, like /voteRecord orders them. */
+  @Transactional(readOnly = true)
+  public void exportVotes(OutputStream out) {
+    try (Stream<Object[]> rollups = stream(ROLLUPS_QUERY)) {
+      rollups.forEach(rollup -> writeLine(out, Vote.builder()
+          .userId((Integer) rollup[0])
+          .rsEventId((Integer) rollup[1])
+          .voteNum((Integer) rollup[2])
+          .time(((LocalDate) rollup[3]).atStartOfDay())
+          .build()));
+    }
+    try (Stream<Object[]> votes = stream(VOTES_QUERY)) {
+      votes.forEach(vote -> writeLine(out, Vote.builder()
+          .userId((Integer) vote[0])
+          .rsEventId((Integer) vote[1])
+          .voteNum((Integer) vote[2])
+          .time((LocalDateTime) vote[3])
+          .build()));
+    }
+  }
+
+  private Stream<Object[]> stream(String query) {
+    return entityManager.createQuery(query, Object[].class)
+        .setHint(HINT_FETCH_SIZE, fetchSize())
+        .getResultStream();
+  }
+
+  /**
+   * Fetch size of the export statements. MySQL Connector/J reads the whole result into memory
+   * for any other fetch size than Integer.MIN_VALUE, unless cursor fetch is switched on for every
+   * connection; other drivers fetch that many rows per round trip.
+   */
+  private int fetchSize() {
+    Integer current = fetchSize;
+    if (current == null) {
+      String database = entityManager.unwrap(Session.class)
+          .doReturningWork(connection -> connection.getMetaData().getDatabaseProductName());
+      current = "MySQL".equals(database) ? Integer.MIN_VALUE : FETCH_SIZE;
+      fetchSize = current;
+    }
+    return current;
+  }
+
+  /** Row is [id, eventName, keyword, voteNum]. */
+  private static RankedRsEvent toRankedRsEvent(int rank, Object[] rsEvent, boolean paid) {
+    return RankedRsEvent.builder()
+        .rank(rank)
+        .rsEventId((Integer) rsEvent[0])
+        .eventName((String) rsEvent[1])
+        .keyword((String) rsEvent[2])
+        .voteNum((Integer) rsEvent[3])
+        .paid(paid)
+        .build();
+  }
+
+  private void writeLine(OutputStream out, Object row) {
+    try {
+      out.write(objectMapper.writeValueAsBytes(row));
+      out.write('\n');
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package com.thoughtworks.rslist.service;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Sorted collection that also answers "element at index k" and "index of element x" in
+ * O(log n), implemented as a treap whose nodes know the size of their subtree. Elements that
+ * compare equal are not supported. Not thread safe.
+ */
+class OrderStatisticTree<E> extends AbstractCollection<E> {
+  private final Comparator<? super E> comparator;
+  private final Random random = new Random();
+  private Node<E> root;
+
+  OrderStatisticTree(Comparator<? super E> comparator) {
+    this.comparator = comparator;
+  }
+
+  @Override
+  public int size() {
+    return size(root);
+  }
+
+  @Override
+  public boolean add(E element) {
+    Node<E>[] parts = split(root, element, false);
+    if (parts[1] != null && comparator.compare(first(parts[1]), element) == 0) {
+      root = merge(parts[0], parts[1]);
+      return false;
+    }
+    root = merge(merge(parts[0], new Node<>(element, random.nextInt())), parts[1]);
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean remove(Object element) {
+    E value = (E) element;
+    Node<E>[] lessAndRest = split(root, value, false);
+    Node<E>[] equalAndGreater = split(lessAndRest[1], value, true);
+    root = merge(lessAndRest[0], equalAndGreater[1]);
+    return equalAndGreater[0] != null;
+  }
+
+  /** Returns the element at the given zero based position. */
+  E get(int index) {
+    if (index < 0 || index >= size()) {
+      throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+    }
+    Node<E> node = root;
+    while (true) {
+      int leftSize = size(node.left);
+      if (index < leftSize) {
+        node = node.left;
+      } else if (index == leftSize) {
+        return node.value;
+      } else {
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+  }
+
+  /** Returns the zero based position of the element, or -1 if it is not in the tree. */
+  int indexOf(E element) {
+    int index = 0;
+    Node<E> node = root;
+    while (node != null) {
+      int compare = comparator.compare(element, node.value);
+      if (compare < 0) {
+        node = node.left;
+      } else if (compare == 0) {
+        return index + size(node.left);
+      } else {
+        index += size(node.left) + 1;
+        node = node.right;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void clear() {
+    root = null;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private final Deque<Node<E>> path = new ArrayDeque<>();
+
+      {
+        descendLeft(root);
+      }
+
+      @Override
+      public boolean hasNext() {
+        return !path.isEmpty();
+      }
+
+      @Override
+      public E next() {
+        if (path.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        Node<E> node = path.pop();
+        descendLeft(node.right);
+        return node.value;
+      }
+
+      private void descendLeft(Node<E> node) {
+        for (; node != null; node = node.left) {
+          path.push(node);
+        }
+      }
+    };
+  }
+
+  /**
+   * Splits the subtree into elements before the pivot and the rest. With {@code inclusive} an
+   * element equal to the pivot goes to the first part.
+   */
+  @SuppressWarnings("unchecked")
+  private Node<E>[] split(Node<E> node, E pivot, boolean inclusive) {
+    if (node == null) {
+      return (Node<E>[]) new Node<?>[] {null, null};
+    }
+    int compare = comparator.compare(node.value, pivot);
+    if (compare < 0 || (inclusive && compare == 0)) {
+      Node<E>[] parts = split(node.right, pivot, inclusive);
+      node.right = parts[0];
+      node.update();
+      parts[0] = node;
+      return parts;
+    }
+    Node<E>[] parts = split(node.left, pivot, inclusive);
+    node.left = parts[1];
+    node.update();
+    parts[1] = node;
+    return parts;
+  }
+
+  private Node<E> merge(Node<E> left, Node<E> right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      left.update();
+      return left;
+    }
+    right.left = merge(left, right.left);
+    right.update();
+    return right;
+  }
+
+  private static <E> E first(Node<E> node) {
+    while (node.left != null) {
+      node = node.left;
+    }
+    return node.value;
+  }
+
+  private static int size(Node<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static class Node<E> {
+    private final E value;
+    private final int priority;
+    private int size = 1;
+    private Node<E> left;
+    private Node<E> right;
+
+    Node(E value, int priority) {
+      this.value = value;
+      this.priority = priority;
+    }
+
+    void update() {
+      size = 1 + size(left) + size(right);
+    }
+  }
+}
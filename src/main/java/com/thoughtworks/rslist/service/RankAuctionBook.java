@@ -0,0 +1,99 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Settles bids on bought ranks. The rank's trade_only row is read with a write lock and a bid
+ * only wins if it beats the amount found there, so of two concurrent bids, on this instance or
+ * another one, only the higher one can win. The rank is unique in trade_only, so two first bids
+ * on a rank conflict as well and the later one is settled again against the row of the first.
+ * With the in-memory ranking, which assumes a single instance, the highest committed bid per
+ * rank is also kept in memory and bids that cannot beat it are turned down without a transaction.
+ */
+@Component
+public class RankAuctionBook {
+  private static final int MAX_ATTEMPTS = 2;
+
+  private final TradeOnlyRepository tradeOnlyRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final Map<Integer, Bid> highest = new ConcurrentHashMap<>();
+
+  public RankAuctionBook(TradeOnlyRepository tradeOnlyRepository, TransactionTemplate transactionTemplate,
+                         RsListProperties properties) {
+    this.tradeOnlyRepository = tradeOnlyRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.enabled = properties.getRanking().isInMemory();
+  }
+
+  /**
+   * Places a bid and, if it beats the rank's current trade, hands the locked trade_only row of
+   * the rank, or a new one if nobody bought it yet, to {@code persist} in the same transaction.
+   *
+   * @return false if the rank already has a bid of at least {@code amount}
+   */
+  public boolean bid(int rank, int amount, Consumer<TradeOnlyDto> persist) {
+    Bid known = getHighest(rank);
+    if (known != null && known.amount >= amount) {
+      return false;
+    }
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> settle(rank, amount, persist)));
+      } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private boolean settle(int rank, int amount, Consumer<TradeOnlyDto> persist) {
+    Optional<TradeOnlyDto> current = tradeOnlyRepository.findByRank(rank);
+    if (current.isPresent() && current.get().getAmount() >= amount) {
+      onSaved(rank, current.get().getRsEvent().getId(), current.get().getAmount());
+      return false;
+    }
+    persist.accept(current.orElseGet(() -> TradeOnlyDto.builder().rank(rank).build()));
+    return true;
+  }
+
+  /** Returns the highest committed bid on the rank known in memory, or null. */
+  public Bid getHighest(int rank) {
+    return enabled ? highest.get(rank) : null;
+  }
+
+  /** Remembers a committed trade on the rank. */
+  void onSaved(int rank, int rsEventId, int amount) {
+    if (enabled) {
+      highest.merge(rank, new Bid(rsEventId, amount), (current, saved) ->
+          current.amount < saved.amount ? saved : current);
+    }
+  }
+
+  /** Forgets a rank whose trade was deleted, unless a higher one was saved since. */
+  void onRemoved(int rank, int rsEventId, int amount) {
+    highest.computeIfPresent(rank, (key, current) ->
+        current.rsEventId == rsEventId && current.amount == amount ? null : current);
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static class Bid {
+    private final int rsEventId;
+    private final int amount;
+  }
+}
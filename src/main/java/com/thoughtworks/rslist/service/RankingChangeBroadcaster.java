@@ -0,0 +1,287 @@
+package com.thoughtworks.rslist.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.domain.RankingChange;
+import com.thoughtworks.rslist.domain.RankingDiff;
+import com.thoughtworks.rslist.domain.RsEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes ranking changes to SSE subscribers. A bump of the {@link RankingVersion} schedules one
+ * publish after the push interval, so every change within that interval ends up in a single
+ * message. The message is the diff between the last published snapshot and the current one; it
+ * is serialized once and queued for every subscriber. Each subscriber's queue is written by at
+ * most one of {@link #SENDER_THREADS} sender threads at a time, so a slow client holds at most
+ * one thread however many clients there are. A client that lets {@link #MAX_PENDING_MESSAGES}
+ * messages pile up, or whose send cannot be queued anymore, is dropped.
+ */
+@Slf4j
+@Component
+public class RankingChangeBroadcaster {
+  static final String EVENT_NAME = "ranking";
+  /** Unsent messages a subscriber may have before it is dropped, 8s at the default interval. */
+  static final int MAX_PENDING_MESSAGES = 16;
+  static final int SENDER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+  /** Send tasks waiting for a sender thread; there is at most one per subscriber. */
+  static final int MAX_QUEUED_SENDS = 4096;
+
+  private final RankingSnapshotPublisher rankingSnapshotPublisher;
+  private final RankingVersion rankingVersion;
+  private final ObjectMapper objectMapper;
+  private final long pushIntervalMillis;
+  private final long streamTimeoutMillis;
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean publishScheduled = new AtomicBoolean();
+  private final Lock publishLock = new ReentrantLock();
+  private RankingSnapshot published;
+  private ScheduledExecutorService scheduler;
+  private ExecutorService senders;
+
+  public RankingChangeBroadcaster(RankingSnapshotPublisher rankingSnapshotPublisher, RankingVersion rankingVersion,
+                                  ObjectMapper objectMapper, RsListProperties properties) {
+    this.rankingSnapshotPublisher = rankingSnapshotPublisher;
+    this.rankingVersion = rankingVersion;
+    this.objectMapper = objectMapper;
+    this.pushIntervalMillis = properties.getRanking().getPushInterval().toMillis();
+    this.streamTimeoutMillis = properties.getRanking().getStreamTimeout().toMillis();
+  }
+
+  public boolean isEnabled() {
+    return rankingSnapshotPublisher.isEnabled();
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!isEnabled()) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ranking-broadcaster");
+      thread.setDaemon(true);
+      return thread;
+    });
+    AtomicInteger threadNumber = new AtomicInteger();
+    senders = new ThreadPoolExecutor(SENDER_THREADS, SENDER_THREADS, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(MAX_QUEUED_SENDS), runnable -> {
+          Thread thread = new Thread(runnable, "ranking-sender-" + threadNumber.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        });
+    rankingVersion.addListener(this::onRankingChanged);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      senders.shutdownNow();
+    }
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+  }
+
+  /**
+   * Registers a subscriber and sends it the whole ranking as its first message. The emitter times
+   * out after {@code rs.ranking.stream-timeout}, clients are expected to reconnect.
+   */
+  public SseEmitter subscribe() throws IOException {
+    return subscribe(new SseEmitter(streamTimeoutMillis));
+  }
+
+  SseEmitter subscribe(SseEmitter emitter) throws IOException {
+    Subscriber subscriber = new Subscriber(emitter);
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(e -> subscribers.remove(subscriber));
+    // under the publish lock, so the ranking sent here is exactly the one the next diff starts from
+    publishLock.lock();
+    try {
+      if (published == null || subscribers.isEmpty()) {
+        published = rankingSnapshotPublisher.get();
+      }
+      // the emitter is not handed to Spring MVC yet, so this only buffers the message
+      emitter.send(event(toJson(diff(null, published))));
+      subscribers.add(subscriber);
+    } finally {
+      publishLock.unlock();
+    }
+    return emitter;
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  private void onRankingChanged() {
+    if (!subscribers.isEmpty() && publishScheduled.compareAndSet(false, true)) {
+      scheduler.schedule(this::publish, pushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  void publish() {
+    publishScheduled.set(false);
+    publishLock.lock();
+    try {
+      RankingSnapshot current = rankingSnapshotPublisher.get();
+      RankingSnapshot previous = published;
+      published = current;
+      if (current.getVersion() != rankingVersion.get()) {
+        onRankingChanged();
+      }
+      RankingDiff diff = diff(previous, current);
+      if (diff.getChanges().isEmpty() || subscribers.isEmpty()) {
+        return;
+      }
+      String message = toJson(diff);
+      subscribers.forEach(subscriber -> subscriber.offer(message));
+    } catch (IOException e) {
+      log.warn("failed to serialize ranking diff", e);
+    } finally {
+      publishLock.unlock();
+    }
+  }
+
+  private static SseEmitter.SseEventBuilder event(String message) {
+    return SseEmitter.event().name(EVENT_NAME).data(message, MediaType.APPLICATION_JSON);
+  }
+
+  private String toJson(RankingDiff diff) throws JsonProcessingException {
+    return objectMapper.writeValueAsString(diff);
+  }
+
+  /** Events whose rank or content differ between the two snapshots; {@code before} may be null. */
+  static RankingDiff diff(RankingSnapshot before, RankingSnapshot after) {
+    Map<Integer, Integer> previousIndex = new HashMap<>();
+    if (before != null) {
+      int[] ids = before.getRsEventIds();
+      for (int index = 0; index < ids.length; index++) {
+        previousIndex.put(ids[index], index);
+      }
+    }
+    List<RankingChange> changes = new ArrayList<>();
+    int[] ids = after.getRsEventIds();
+    for (int index = 0; index < ids.length; index++) {
+      RsEvent rsEvent = after.getRsEvents().get(index);
+      Integer previous = previousIndex.remove(ids[index]);
+      if (previous != null && previous == index
+          && sameContent(before.getRsEvents().get(previous), rsEvent)) {
+        continue;
+      }
+      changes.add(RankingChange.builder()
+          .rsEventId(ids[index])
+          .rank(index + 1)
+          .previousRank(previous == null ? 0 : previous + 1)
+          .eventName(rsEvent.getEventName())
+          .keyword(rsEvent.getKeyword())
+          .voteNum(rsEvent.getVoteNum())
+          .build());
+    }
+    previousIndex.forEach((rsEventId, previous) -> changes.add(RankingChange.builder()
+        .rsEventId(rsEventId)
+        .previousRank(previous + 1)
+        .build()));
+    return new RankingDiff(after.getVersion(), changes);
+  }
+
+  private static boolean sameContent(RsEvent before, RsEvent after) {
+    return before.getVoteNum() == after.getVoteNum()
+        && Objects.equals(before.getEventName(), after.getEventName())
+        && Objects.equals(before.getKeyword(), after.getKeyword());
+  }
+
+  /**
+   * A subscriber's unsent messages, written in order by one sender task at a time. Whoever holds
+   * {@code sending} owns the emitter, so a dropped subscriber is completed by its sender once the
+   * send at hand returns, or right away if no send is running, and never by another thread.
+   */
+  private class Subscriber {
+    private final SseEmitter emitter;
+    private final BlockingQueue<String> pending = new ArrayBlockingQueue<>(MAX_PENDING_MESSAGES);
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private volatile Exception dropped;
+
+    Subscriber(SseEmitter emitter) {
+      this.emitter = emitter;
+    }
+
+    void offer(String message) {
+      if (!pending.offer(message)) {
+        drop(new IllegalStateException(MAX_PENDING_MESSAGES + " ranking messages were not sent in time"));
+        return;
+      }
+      sendPending();
+    }
+
+    private void sendPending() {
+      if (!sending.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        senders.execute(this::send);
+      } catch (RejectedExecutionException e) {
+        sending.set(false);
+        drop(new IllegalStateException("no ranking sender is available", e));
+      }
+    }
+
+    private void send() {
+      try {
+        for (String message = pending.poll(); message != null && dropped == null; message = pending.poll()) {
+          emitter.send(event(message));
+        }
+      } catch (IOException | IllegalStateException e) {
+        drop(e);
+      } finally {
+        sending.set(false);
+      }
+      completeIfDropped();
+      if (dropped == null && !pending.isEmpty()) {
+        sendPending();
+      }
+    }
+
+    private void drop(Exception e) {
+      subscribers.remove(this);
+      if (dropped == null) {
+        dropped = e;
+      }
+      completeIfDropped();
+    }
+
+    /** Completes a dropped emitter unless a send is running; that sender completes it afterwards. */
+    private void completeIfDropped() {
+      // sending stays set, nothing is sent to a completed emitter
+      if (dropped != null && sending.compareAndSet(false, true)) {
+        emitter.completeWithError(dropped);
+      }
+    }
+  }
+}
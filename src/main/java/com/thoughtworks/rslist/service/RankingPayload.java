@@ -0,0 +1,14 @@
+package com.thoughtworks.rslist.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** A /rs/list response body serialized once, as JSON and gzipped JSON, with the ETag of each. */
+@Getter
+@AllArgsConstructor
+public class RankingPayload {
+  private final String eTag;
+  private final String gzipETag;
+  private final byte[] json;
+  private final byte[] gzip;
+}
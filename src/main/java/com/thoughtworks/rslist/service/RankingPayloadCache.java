@@ -0,0 +1,97 @@
+package com.thoughtworks.rslist.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized /rs/list bodies of the current {@link RankingSnapshot}: the whole ranking and up to
+ * {@link #MAX_WINDOWS} start/end windows, each as JSON and gzipped JSON. All of them are dropped
+ * when the snapshot version moves, so a read of an unchanged ranking only looks up bytes.
+ */
+@Component
+public class RankingPayloadCache {
+  static final int MAX_WINDOWS = 64;
+  private static final long WHOLE_RANKING = 0;
+
+  private final RankingSnapshotPublisher rankingSnapshotPublisher;
+  private final RankingVersion rankingVersion;
+  private final ObjectMapper objectMapper;
+  private volatile Payloads payloads = new Payloads(-1);
+
+  public RankingPayloadCache(RankingSnapshotPublisher rankingSnapshotPublisher, RankingVersion rankingVersion,
+                             ObjectMapper objectMapper) {
+    this.rankingSnapshotPublisher = rankingSnapshotPublisher;
+    this.rankingVersion = rankingVersion;
+    this.objectMapper = objectMapper;
+  }
+
+  public boolean isEnabled() {
+    return rankingSnapshotPublisher.isEnabled();
+  }
+
+  /**
+   * ETag of the payload {@link #get} would return, without building it. It only depends on the
+   * snapshot version, so it is the same for every window, but an invalid window is rejected here
+   * already so that it is never answered with 304.
+   */
+  public String getETag(Integer start, Integer end, boolean gzip) {
+    if (start != null && end != null) {
+      RankingSnapshot.checkWindow(start, end);
+    }
+    return rankingVersion.toETag(rankingSnapshotPublisher.get().getVersion(), gzip);
+  }
+
+  /** The whole ranking if start or end is null, otherwise ranks start..end. */
+  @Timed(value = "rs.service", extraTags = {"operation", "getRsListPayload"})
+  public RankingPayload get(Integer start, Integer end) {
+    RankingSnapshot snapshot = rankingSnapshotPublisher.get();
+    Payloads current = payloads;
+    if (current.version < snapshot.getVersion()) {
+      current = new Payloads(snapshot.getVersion());
+      payloads = current;
+    } else if (current.version > snapshot.getVersion()) {
+      return build(snapshot, start, end);
+    }
+    long key = start == null || end == null ? WHOLE_RANKING : (long) start << 32 | end & 0xffffffffL;
+    RankingPayload payload = current.windows.get(key);
+    if (payload == null) {
+      payload = build(snapshot, start, end);
+      if (key == WHOLE_RANKING || current.windows.size() < MAX_WINDOWS) {
+        current.windows.putIfAbsent(key, payload);
+      }
+    }
+    return payload;
+  }
+
+  private RankingPayload build(RankingSnapshot snapshot, Integer start, Integer end) {
+    Object rsEvents = start == null || end == null ? snapshot.getRsEvents() : snapshot.getRsEvents(start, end);
+    try {
+      byte[] json = objectMapper.writeValueAsBytes(rsEvents);
+      ByteArrayOutputStream gzip = new ByteArrayOutputStream(json.length / 4 + 64);
+      try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+        out.write(json);
+      }
+      return new RankingPayload(rankingVersion.toETag(snapshot.getVersion(), false),
+          rankingVersion.toETag(snapshot.getVersion(), true), json, gzip.toByteArray());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static class Payloads {
+    private final long version;
+    private final Map<Long, RankingPayload> windows = new ConcurrentHashMap<>();
+
+    Payloads(long version) {
+      this.version = version;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable ranking as served by /rs/list: paid slots pinned to their bought rank and organic
+ * events filling the gaps by voteNum. A paid rank past the last organic event moves up to close
+ * the gap.
+ */
+@Getter
+public class RankingSnapshot {
+  private final long version;
+  private final List<RsEvent> rsEvents;
+  private final int[] rsEventIds;
+
+  private RankingSnapshot(long version, List<RsEvent> rsEvents, int[] rsEventIds) {
+    this.version = version;
+    this.rsEvents = Collections.unmodifiableList(rsEvents);
+    this.rsEventIds = rsEventIds;
+  }
+
+  public List<RsEvent> getRsEvents(int start, int end) {
+    checkWindow(start, end);
+    if (start > rsEvents.size()) {
+      return Collections.emptyList();
+    }
+    return rsEvents.subList(start - 1, Math.min(end, rsEvents.size()));
+  }
+
+  /** Rejects a /rs/list window that is not a non-empty range of 1-based ranks. */
+  static void checkWindow(int start, int end) {
+    if (start < 1 || end < start) {
+      throw new RequestNotValidException("invalid index");
+    }
+  }
+
+  /**
+   * @param ranked all events ordered by voteNum, paid ones included
+   * @param paidSlots bought ranks ordered by rank, at most one per event
+   */
+  static RankingSnapshot merge(long version, List<RsEventLeaderboard.Entry> ranked, List<PaidSlot> paidSlots) {
+    Set<Integer> paidIds = new HashSet<>();
+    for (PaidSlot paidSlot : paidSlots) {
+      paidIds.add(paidSlot.getRsEventId());
+    }
+    Map<Integer, RsEventLeaderboard.Entry> paidEntries = new HashMap<>();
+    for (RsEventLeaderboard.Entry entry : ranked) {
+      if (paidIds.contains(entry.getId())) {
+        paidEntries.put(entry.getId(), entry);
+      }
+    }
+
+    List<RsEvent> rsEvents = new ArrayList<>(ranked.size());
+    int[] rsEventIds = new int[ranked.size()];
+    int organicIndex = 0;
+    int paidIndex = 0;
+    while (rsEvents.size() < rsEventIds.length) {
+      RsEventLeaderboard.Entry next = null;
+      while (paidIndex < paidSlots.size() && next == null
+          && paidSlots.get(paidIndex).getRank() <= rsEvents.size() + 1) {
+        next = paidEntries.remove(paidSlots.get(paidIndex++).getRsEventId());
+      }
+      while (next == null && organicIndex < ranked.size()) {
+        RsEventLeaderboard.Entry candidate = ranked.get(organicIndex++);
+        if (!paidIds.contains(candidate.getId())) {
+          next = candidate;
+        }
+      }
+      while (next == null && paidIndex < paidSlots.size()) {
+        next = paidEntries.remove(paidSlots.get(paidIndex++).getRsEventId());
+      }
+      if (next == null) {
+        break;
+      }
+      rsEventIds[rsEvents.size()] = next.getId();
+      rsEvents.add(next.toRsEvent());
+    }
+    return new RankingSnapshot(version, rsEvents, Arrays.copyOf(rsEventIds, rsEvents.size()));
+  }
+
+  /**
+   * Position of the index-th paid slot (both ordered by rank) once the gap behind the last of
+   * the unpaidCount organic events has been closed.
+   */
+  static int paidRank(List<PaidSlot> paidSlots, int index, int unpaidCount) {
+    return (int) Math.min(paidSlots.get(index).getRank(), (long) unpaidCount + index + 1);
+  }
+
+  /** Position of the organic event that comes unpaidIndex-th among the unpaid events. */
+  static int unpaidRank(List<PaidSlot> paidSlots, int unpaidIndex, int unpaidCount) {
+    int rank = unpaidIndex + 1;
+    for (int index = 0; index < paidSlots.size() && paidRank(paidSlots, index, unpaidCount) <= rank; index++) {
+      rank++;
+    }
+    return rank;
+  }
+
+  @Getter
+  @AllArgsConstructor
+  static class PaidSlot {
+    private final int rank;
+    private final int rsEventId;
+  }
+}
@@ -0,0 +1,164 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.ReadWriteRoutingDataSource;
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes the merged /rs/list ranking as an immutable {@link RankingSnapshot}. The first change
+ * of the {@link RankingVersion} after a quiet period schedules one rebuild on a background thread
+ * {@code rs.ranking.snapshot-debounce} later, so a burst of votes costs a single rebuild and
+ * readers only ever do a volatile read. With a zero debounce the snapshot is instead rebuilt on
+ * the first read after every change.
+ */
+@Slf4j
+@Component
+public class RankingSnapshotPublisher {
+  private final RsEventLeaderboard rsEventLeaderboard;
+  private final TradeOnlyRepository tradeOnlyRepository;
+  private final RankingVersion rankingVersion;
+  private final long debounceNanos;
+
+  private final Lock rebuildLock = new ReentrantLock();
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+  private final AtomicLong tradeVersion = new AtomicLong();
+  private volatile RankingSnapshot snapshot;
+  private volatile PaidSlots paidSlots;
+  private ScheduledExecutorService rebuilder;
+
+  public RankingSnapshotPublisher(RsEventLeaderboard rsEventLeaderboard, TradeOnlyRepository tradeOnlyRepository,
+                                  RankingVersion rankingVersion, RsListProperties properties) {
+    this.rsEventLeaderboard = rsEventLeaderboard;
+    this.tradeOnlyRepository = tradeOnlyRepository;
+    this.rankingVersion = rankingVersion;
+    this.debounceNanos = properties.getRanking().getSnapshotDebounce().toNanos();
+  }
+
+  public boolean isEnabled() {
+    return rsEventLeaderboard.isEnabled();
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!isEnabled() || debounceNanos == 0) {
+      return;
+    }
+    rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ranking-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    });
+    rankingVersion.addListener(this::onRankingChanged);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (rebuilder != null) {
+      rebuilder.shutdownNow();
+    }
+  }
+
+  public RankingSnapshot get() {
+    RankingSnapshot current = snapshot;
+    if (current != null && (rebuilder != null || current.getVersion() == rankingVersion.get())) {
+      return current;
+    }
+    return rebuild();
+  }
+
+  private void onRankingChanged() {
+    if (rebuildScheduled.compareAndSet(false, true)) {
+      rebuilder.schedule(this::scheduledRebuild, debounceNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void scheduledRebuild() {
+    rebuildScheduled.set(false);
+    try {
+      rebuild();
+    } catch (RuntimeException e) {
+      log.warn("failed to rebuild the ranking snapshot, keeping the previous one", e);
+    }
+  }
+
+  private RankingSnapshot rebuild() {
+    rebuildLock.lock();
+    try {
+      RankingSnapshot current = snapshot;
+      long version = rankingVersion.get();
+      if (current == null || current.getVersion() != version) {
+        current = RankingSnapshot.merge(version, rsEventLeaderboard.getEntries(), getPaidSlots());
+        snapshot = current;
+      }
+      return current;
+    } finally {
+      rebuildLock.unlock();
+    }
+  }
+
+  /** ETag of the snapshot {@link #get()} returns. */
+  public String getETag() {
+    return rankingVersion.toETag(get().getVersion());
+  }
+
+  /** ETag of the live ranking the leaderboard answers single event reads from. */
+  public String getLiveETag() {
+    return rankingVersion.toETag(rankingVersion.get());
+  }
+
+  public int getPaidSlotCount() {
+    return getPaidSlots().size();
+  }
+
+  /**
+   * Bought ranks ordered by rank. With the in-memory ranking they are cached until the next trade
+   * change committed here; without it other instances may be writing trades as well, so they are
+   * read from trade_only every time.
+   */
+  List<RankingSnapshot.PaidSlot> getPaidSlots() {
+    if (!isEnabled()) {
+      return loadPaidSlots();
+    }
+    PaidSlots current = paidSlots;
+    long version = tradeVersion.get();
+    if (current != null && current.version == version) {
+      return current.slots;
+    }
+    List<RankingSnapshot.PaidSlot> slots = ReadWriteRoutingDataSource.onPrimary(this::loadPaidSlots);
+    paidSlots = new PaidSlots(version, Collections.unmodifiableList(slots));
+    return slots;
+  }
+
+  private List<RankingSnapshot.PaidSlot> loadPaidSlots() {
+    return tradeOnlyRepository.findAllWithRsEvent().stream()
+        .map(ele -> new RankingSnapshot.PaidSlot(ele.getRank(), ele.getRsEvent().getId()))
+        .collect(Collectors.toList());
+  }
+
+  void onTradesChanged() {
+    tradeVersion.incrementAndGet();
+    rankingVersion.bump();
+  }
+
+  @AllArgsConstructor
+  private static class PaidSlots {
+    private final long version;
+    private final List<RankingSnapshot.PaidSlot> slots;
+  }
+}
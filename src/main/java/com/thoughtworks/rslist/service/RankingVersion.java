@@ -0,0 +1,45 @@
+package com.thoughtworks.rslist.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic counter bumped after every committed change that can move the ranking, i.e. an rs
+ * event or a bought rank being written.
+ */
+@Component
+public class RankingVersion {
+  private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+  private final AtomicLong version = new AtomicLong();
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+  public long get() {
+    return version.get();
+  }
+
+  /**
+   * Strong ETag for a ranking built at the given version. The start time of this instance is
+   * part of the tag, since the counter starts over on every start.
+   */
+  public String toETag(long version) {
+    return "\"" + epoch + "-" + version + "\"";
+  }
+
+  /** Like {@link #toETag(long)}, with a "-gz" suffix for the gzipped representation. */
+  public String toETag(long version, boolean gzip) {
+    return gzip ? "\"" + epoch + "-" + version + "-gz\"" : toETag(version);
+  }
+
+  /** Runs the listener on the bumping thread after every bump; it must return quickly. */
+  void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  void bump() {
+    version.incrementAndGet();
+    listeners.forEach(Runnable::run);
+  }
+}
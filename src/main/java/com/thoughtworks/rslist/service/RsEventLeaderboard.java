@@ -0,0 +1,224 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.ReadWriteRoutingDataSource;
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.RsEventSummary;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory vote ranking of all rs events. It is loaded from the database once and then kept up
+ * to date in place by {@link RsEventLeaderboardListener} whenever an rs event is saved or deleted,
+ * so reads never touch the database. The load runs once all beans exist, i.e. after pending vote
+ * shards were compacted and before the web server takes requests, so no committed change can
+ * slip in between the load query and the leaderboard accepting updates.
+ */
+@Component
+public class RsEventLeaderboard implements SmartInitializingSingleton {
+  static final Comparator<Entry> ORDER =
+      Comparator.comparingInt(Entry::getVoteNum).reversed().thenComparingInt(Entry::getId);
+
+  private final RsEventRepository rsEventRepository;
+  private final RankingVersion rankingVersion;
+  private final boolean enabled;
+
+  private final Map<Integer, Entry> entries = new HashMap<>();
+  private final OrderStatisticTree<Entry> ranking = new OrderStatisticTree<>(ORDER);
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile boolean loaded;
+
+  public RsEventLeaderboard(RsEventRepository rsEventRepository, RankingVersion rankingVersion,
+                            RsListProperties properties) {
+    this.rsEventRepository = rsEventRepository;
+    this.rankingVersion = rankingVersion;
+    this.enabled = properties.getRanking().isInMemory();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    warmUp();
+  }
+
+  public void warmUp() {
+    if (enabled) {
+      load();
+    }
+  }
+
+  public int size() {
+    load();
+    lock.readLock().lock();
+    try {
+      return ranking.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the event at the given zero based position of the vote ranking in O(log n). */
+  public Optional<RsEvent> get(int index) {
+    load();
+    lock.readLock().lock();
+    try {
+      if (index < 0 || index >= ranking.size()) {
+        return Optional.empty();
+      }
+      return Optional.of(ranking.get(index).toRsEvent());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the zero based position of the event in the vote ranking in O(log n), or -1. */
+  public int indexOf(int rsEventId) {
+    load();
+    lock.readLock().lock();
+    try {
+      Entry entry = entries.get(rsEventId);
+      return entry == null ? -1 : ranking.indexOf(entry);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  List<Entry> getEntries() {
+    load();
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(ranking);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  void save(Entry entry) {
+    if (!loaded) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      Entry old = entries.remove(entry.getId());
+      if (old != null) {
+        ranking.remove(old);
+      }
+      entries.put(entry.getId(), entry);
+      ranking.add(entry);
+      rankingVersion.bump();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Credits votes that were not written through JPA, e.g. buffered by {@link VoteDeltaBuffer}. */
+  public void addVotes(int rsEventId, int voteNum) {
+    if (!loaded) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      Entry old = entries.get(rsEventId);
+      if (old == null) {
+        return;
+      }
+      ranking.remove(old);
+      Entry entry = old.withVoteNum(old.getVoteNum() + voteNum);
+      entries.put(rsEventId, entry);
+      ranking.add(entry);
+      rankingVersion.bump();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void remove(int rsEventId) {
+    if (!loaded) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      Entry old = entries.remove(rsEventId);
+      if (old != null) {
+        ranking.remove(old);
+        rankingVersion.bump();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (loaded) {
+        return;
+      }
+      for (RsEventSummary rsEvent : ReadWriteRoutingDataSource.onPrimary(rsEventRepository::findAllRanked)) {
+        Entry entry = Entry.of(rsEvent);
+        entries.put(entry.getId(), entry);
+        ranking.add(entry);
+      }
+      loaded = true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Getter
+  @AllArgsConstructor
+  static class Entry {
+    private final int id;
+    private final String eventName;
+    private final String keyword;
+    private final int voteNum;
+
+    static Entry of(RsEventDto rsEventDto) {
+      return new Entry(
+          rsEventDto.getId(),
+          rsEventDto.getEventName(),
+          rsEventDto.getKeyword(),
+          rsEventDto.getVoteNum());
+    }
+
+    static Entry of(RsEventSummary rsEvent) {
+      return new Entry(
+          rsEvent.getId(),
+          rsEvent.getEventName(),
+          rsEvent.getKeyword(),
+          rsEvent.getVoteNum());
+    }
+
+    Entry withVoteNum(int voteNum) {
+      return new Entry(id, eventName, keyword, voteNum);
+    }
+
+    RsEvent toRsEvent() {
+      return RsEvent.builder()
+          .eventName(eventName)
+          .keyword(keyword)
+          .userId(id)
+          .voteNum(voteNum)
+          .build();
+    }
+  }
+}
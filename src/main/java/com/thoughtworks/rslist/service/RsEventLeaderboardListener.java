@@ -0,0 +1,50 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.dto.RsEventDto;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Mirrors every rsEvent row written through JPA into the {@link RsEventLeaderboard}. Changes are
+ * applied after the surrounding transaction commits, so a rolled back write never shows up in
+ * the ranking.
+ */
+public class RsEventLeaderboardListener {
+  private final ObjectProvider<RsEventLeaderboard> leaderboard;
+
+  public RsEventLeaderboardListener(ObjectProvider<RsEventLeaderboard> leaderboard) {
+    this.leaderboard = leaderboard;
+  }
+
+  @PostPersist
+  @PostUpdate
+  public void onSave(RsEventDto rsEventDto) {
+    RsEventLeaderboard.Entry entry = RsEventLeaderboard.Entry.of(rsEventDto);
+    afterCommit(() -> leaderboard.getObject().save(entry));
+  }
+
+  @PostRemove
+  public void onRemove(RsEventDto rsEventDto) {
+    int rsEventId = rsEventDto.getId();
+    afterCommit(() -> leaderboard.getObject().remove(rsEventId));
+  }
+
+  static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+}
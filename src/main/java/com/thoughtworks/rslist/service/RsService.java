@@ -1,49 +1,98 @@
 package com.thoughtworks.rslist.service;
 
+import com.thoughtworks.rslist.config.ReadWriteRoutingDataSource;
 import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.domain.RsEventTrend;
 import com.thoughtworks.rslist.domain.Trade;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteResult;
 import com.thoughtworks.rslist.dto.*;
 import com.thoughtworks.rslist.exception.AmountIsLessException;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
 import com.thoughtworks.rslist.repository.*;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.RequestBody;
 
 import javax.validation.Valid;
-import java.util.Comparator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.function.Predicate;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
 public class RsService {
+  private static final int NO_RS_EVENT_ID = 0;
+  private static final int MAX_TRENDING_SIZE = 100;
+  private static final String METRIC_NAME = "rs.service";
+
   final RsEventRepository rsEventRepository;
   final UserRepository userRepository;
   final VoteRepository voteRepository;
   final TradeOnlyRepository tradeOnlyRepository;
   final TradeRepository tradeRepository;
+  final RsEventLeaderboard rsEventLeaderboard;
+  final RankingSnapshotPublisher rankingSnapshotPublisher;
+  final VoteDeltaBuffer voteDeltaBuffer;
+  final RankAuctionBook rankAuctionBook;
+  final TrendingCounters trendingCounters;
+  final ShardedVoteCounter shardedVoteCounter;
 
 
   public RsService(RsEventRepository rsEventRepository, UserRepository userRepository,
-                   VoteRepository voteRepository, TradeOnlyRepository tradeOnlyRepository, TradeRepository tradeRepository) {
+                   VoteRepository voteRepository, TradeOnlyRepository tradeOnlyRepository, TradeRepository tradeRepository,
+                   RsEventLeaderboard rsEventLeaderboard, RankingSnapshotPublisher rankingSnapshotPublisher,
+                   VoteDeltaBuffer voteDeltaBuffer, RankAuctionBook rankAuctionBook,
+                   TrendingCounters trendingCounters, ShardedVoteCounter shardedVoteCounter) {
     this.rsEventRepository = rsEventRepository;
     this.userRepository = userRepository;
     this.voteRepository = voteRepository;
     this.tradeOnlyRepository = tradeOnlyRepository;
     this.tradeRepository = tradeRepository;
+    this.rsEventLeaderboard = rsEventLeaderboard;
+    this.rankingSnapshotPublisher = rankingSnapshotPublisher;
+    this.voteDeltaBuffer = voteDeltaBuffer;
+    this.rankAuctionBook = rankAuctionBook;
+    this.trendingCounters = trendingCounters;
+    this.shardedVoteCounter = shardedVoteCounter;
   }
 
+  @Timed(value = METRIC_NAME, extraTags = {"operation", "getRsEventsBetween"})
   public List<RsEvent> getRsEventsBetween(Integer start, Integer end) {
-    List<TradeOnlyDto> tradeOnlyDtos = getTradeDtos(start, end);
-    List<RsEvent> tradeEvents = getRsEventsWithTrade(tradeOnlyDtos);
-    List<RsEvent> rsEvents = getRsEvents();
+    if (rankingSnapshotPublisher.isEnabled()) {
+      RankingSnapshot snapshot = rankingSnapshotPublisher.get();
+      if (start != null && end != null) {
+        return snapshot.getRsEvents(start, end);
+      }
+      return snapshot.getRsEvents();
+    }
+    if (start != null && end != null) {
+      return ReadWriteRoutingDataSource.onReplica(() -> getRsEventPage(start, end));
+    }
+    List<RankingSnapshot.PaidSlot> paidSlots = rankingSnapshotPublisher.getPaidSlots();
+    List<RsEventLeaderboard.Entry> ranked = ReadWriteRoutingDataSource.onReplica(rsEventRepository::findAllRanked)
+            .stream()
+            .map(RsEventLeaderboard.Entry::of)
+            .collect(Collectors.toList());
+    return RankingSnapshot.merge(0, ranked, paidSlots).getRsEvents();
+  }
 
-    rsEvents = addTradeRsInToRsEvent(start, tradeOnlyDtos, tradeEvents, rsEvents);
-    return rsEvents;
+  /**
+   * ETag of the live ranking {@link #getRsEvent} and {@link #getRank} answer from, or null when
+   * the ranking is read from the database and a tag would need a query itself.
+   */
+  public String getRankingETag() {
+    return rankingSnapshotPublisher.isEnabled() ? rankingSnapshotPublisher.getLiveETag() : null;
   }
 
   public boolean addRsEvents(@RequestBody @Valid RsEvent rsEvent) {
@@ -64,117 +113,363 @@ public class RsService {
     return userDtoisPresent;
   }
 
-  private List<TradeOnlyDto> getTradeDtos(Integer start, Integer end) {
-    return tradeOnlyRepository.findAll().stream()
-            .filter(ele->{
-              if(start!=null && end != null) {
-                return ele.getRank()>start && ele.getRank() <= end;
-              }else if(start != null) {
-                return ele.getRank() > start;
-              } else if(end != null) {
-                return ele.getRank() > 0 && ele.getRank() <= end;
-              } else {
-                return true;
-              }
-            }).collect(Collectors.toList());
-  }
-
-  private List<RsEvent> addTradeRsInToRsEvent(Integer start, List<TradeOnlyDto> tradeOnlyDtos, List<RsEvent> tradeEvents, List<RsEvent> rsEvents) {
-    for (int index = 0; index < tradeOnlyDtos.size(); index ++) {
-      int rankIndex = tradeOnlyDtos.get(index).getRank() - 1;
-      if(start != null) {
-        rankIndex += start - 1;
-      }
-      rsEvents.add(rankIndex, tradeEvents.get(index));
-    }
-    rsEvents = rsEvents.stream().filter(distinctByKey(RsEvent::getEventName)).collect(Collectors.toList());
-    return rsEvents;
-  }
-
-
-  private static <T> Predicate<T> distinctByKey(Function<? super T, ?> keyExtractor) {
-    Map<Object,Boolean> seen = new ConcurrentHashMap<>();
-    return t -> ((ConcurrentHashMap) seen).putIfAbsent(keyExtractor.apply(t), Boolean.TRUE) == null;
-  }
-  private List<RsEvent> getRsEventsWithTrade(List<TradeOnlyDto> tradeOnlyDtos) {
-    return tradeOnlyDtos.stream()
-            .map(ele -> rsEventRepository.findById(ele.getRsEvent().getId()).get())
-            .sorted(Comparator.comparing(RsEventDto::getVoteNum).reversed())
-            .map(
-                    item ->
-                            RsEvent.builder()
-                                    .eventName(item.getEventName())
-                                    .keyword(item.getKeyword())
-                                    .userId(item.getId())
-                                    .voteNum(item.getVoteNum())
-                                    .build())
+  private List<RsEvent> getRsEventPage(int start, int end) {
+    RankingSnapshot.checkWindow(start, end);
+    List<RsEvent> page = mergeTradesIntoPage(start, end, tradeOnlyRepository.findByRankBetween(1, end),
+            Integer.MAX_VALUE);
+    if (page == null) {
+      List<TradeOnlyDto> tradeOnlyDtos = tradeOnlyRepository.findAllWithRsEvent();
+      int unpaidCount = (int) rsEventRepository.count() - tradeOnlyDtos.size();
+      page = mergeTradesIntoPage(start, end, tradeOnlyDtos, unpaidCount);
+    }
+    return page;
+  }
+
+  /**
+   * Fills ranks start..end with paid slots at their bought rank and organic events, ordered by
+   * voteNum, in the gaps. Only the organic events of the window are read from the database. A
+   * paid rank past the last organic event moves up to close the gap, which needs the organic
+   * count and every trade; while it is unknown ({@code Integer.MAX_VALUE}) the trades bought at
+   * ranks up to {@code end} are enough, and this returns null if the window turns out to run
+   * past the last organic event.
+   */
+  private List<RsEvent> mergeTradesIntoPage(int start, int end, List<TradeOnlyDto> tradeOnlyDtos,
+                                            int unpaidCount) {
+    List<RankingSnapshot.PaidSlot> paidSlots = tradeOnlyDtos.stream()
+            .map(ele -> new RankingSnapshot.PaidSlot(ele.getRank(), ele.getRsEvent().getId()))
             .collect(Collectors.toList());
+    Map<Integer, TradeOnlyDto> paidInPage = new HashMap<>();
+    int paidBeforePage = 0;
+    for (int index = 0; index < paidSlots.size(); index++) {
+      int rank = RankingSnapshot.paidRank(paidSlots, index, unpaidCount);
+      if (rank < start) {
+        paidBeforePage++;
+      } else if (rank <= end) {
+        paidInPage.put(rank, tradeOnlyDtos.get(index));
+      }
+    }
+    long last = Math.min(end, (long) unpaidCount + paidSlots.size());
+    int limit = (int) (last - start + 1) - paidInPage.size();
+    List<RsEventSummary> organic = limit > 0
+            ? rsEventRepository.findUnpaidRankedPage(start - 1 - paidBeforePage, limit)
+            : Collections.emptyList();
+    if (unpaidCount == Integer.MAX_VALUE && organic.size() < limit) {
+      return null;
+    }
+    Iterator<RsEventSummary> organicIterator = organic.iterator();
+    List<RsEvent> page = new ArrayList<>();
+    for (int rank = start; rank <= last; rank++) {
+      TradeOnlyDto paid = paidInPage.get(rank);
+      if (paid != null) {
+        page.add(toRsEvent(paid.getRsEvent()));
+      } else if (organicIterator.hasNext()) {
+        page.add(toRsEvent(organicIterator.next()));
+      }
+    }
+    return page;
+  }
+
+  private static List<Integer> paidEventIds(List<RankingSnapshot.PaidSlot> paidSlots) {
+    if (paidSlots.isEmpty()) {
+      return Collections.singletonList(NO_RS_EVENT_ID);
+    }
+    return paidSlots.stream().map(RankingSnapshot.PaidSlot::getRsEventId).collect(Collectors.toList());
+  }
+
+  /** Returns the event at the 1-based position of the /rs/list ranking, the inverse of {@link #getRank}. */
+  public RsEvent getRsEvent(int rank) {
+    List<RankingSnapshot.PaidSlot> paidSlots = rankingSnapshotPublisher.getPaidSlots();
+    int size = rsEventLeaderboard.isEnabled() ? rsEventLeaderboard.size() : (int) rsEventRepository.count();
+    if (rank < 1 || rank > size) {
+      throw new RequestNotValidException("invalid index");
+    }
+    int unpaidCount = size - paidSlots.size();
+    int paidAbove = 0;
+    for (int paidIndex = 0; paidIndex < paidSlots.size(); paidIndex++) {
+      int paidRank = RankingSnapshot.paidRank(paidSlots, paidIndex, unpaidCount);
+      if (paidRank == rank) {
+        return getPaidRsEvent(paidSlots.get(paidIndex).getRsEventId());
+      }
+      if (paidRank < rank) {
+        paidAbove++;
+      }
+    }
+    return getUnpaidRsEvent(paidSlots, rank - 1 - paidAbove);
+  }
+
+  private RsEvent getPaidRsEvent(int rsEventId) {
+    Optional<RsEvent> rsEvent;
+    if (rsEventLeaderboard.isEnabled()) {
+      rsEvent = rsEventLeaderboard.get(rsEventLeaderboard.indexOf(rsEventId));
+    } else {
+      rsEvent = rsEventRepository.findAllByIdIn(Collections.singletonList(rsEventId))
+              .stream().findFirst().map(RsService::toRsEvent);
+    }
+    return rsEvent.orElseThrow(() -> new RequestNotValidException("invalid index"));
+  }
+
+  /** Returns the unpaidIndex-th event by votes, skipping the events with a bought rank. */
+  private RsEvent getUnpaidRsEvent(List<RankingSnapshot.PaidSlot> paidSlots, int unpaidIndex) {
+    Optional<RsEvent> rsEvent;
+    if (rsEventLeaderboard.isEnabled()) {
+      int[] paidIndexes = paidSlots.stream()
+              .mapToInt(paidSlot -> rsEventLeaderboard.indexOf(paidSlot.getRsEventId()))
+              .sorted()
+              .toArray();
+      int index = unpaidIndex;
+      for (int paidIndex : paidIndexes) {
+        if (paidIndex >= 0 && paidIndex <= index) {
+          index++;
+        }
+      }
+      rsEvent = rsEventLeaderboard.get(index);
+    } else {
+      rsEvent = rsEventRepository.findRankedPage(paidEventIds(paidSlots), unpaidIndex, 1)
+              .stream().findFirst().map(RsService::toRsEvent);
+    }
+    return rsEvent.orElseThrow(() -> new RequestNotValidException("invalid index"));
+  }
+
+  /** Returns the 1-based position of the event in the /rs/list ranking. */
+  public int getRank(int rsEventId) {
+    List<RankingSnapshot.PaidSlot> paidSlots = rankingSnapshotPublisher.getPaidSlots();
+    int unpaidCount;
+    int index;
+    int paidAbove = 0;
+    if (rsEventLeaderboard.isEnabled()) {
+      index = rsEventLeaderboard.indexOf(rsEventId);
+      if (index < 0) {
+        throw new RequestNotValidException("invalid id");
+      }
+      unpaidCount = rsEventLeaderboard.size() - paidSlots.size();
+      for (RankingSnapshot.PaidSlot paidSlot : paidSlots) {
+        if (rsEventLeaderboard.indexOf(paidSlot.getRsEventId()) < index) {
+          paidAbove++;
+        }
+      }
+    } else {
+      // not findById: a cached entity can be behind the vote_num the other events are counted by
+      int voteNum = rsEventRepository.findVoteNumById(rsEventId)
+              .orElseThrow(() -> new RequestNotValidException("invalid id"));
+      unpaidCount = (int) rsEventRepository.count() - paidSlots.size();
+      index = (int) rsEventRepository.countRankedAbove(voteNum, rsEventId);
+      paidAbove = (int) rsEventRepository.countRankedAboveAmong(paidEventIds(paidSlots), voteNum, rsEventId);
+    }
+    for (int paidIndex = 0; paidIndex < paidSlots.size(); paidIndex++) {
+      if (paidSlots.get(paidIndex).getRsEventId() == rsEventId) {
+        return RankingSnapshot.paidRank(paidSlots, paidIndex, unpaidCount);
+      }
+    }
+    return RankingSnapshot.unpaidRank(paidSlots, index - paidAbove, unpaidCount);
   }
 
-  public List<RsEvent> getRsEvents() {
-    return rsEventRepository.findAll().stream()
-            .sorted(Comparator.comparing(RsEventDto::getVoteNum).reversed())
-            .map(item ->
-                        RsEvent.builder()
-                                .eventName(item.getEventName())
-                                .keyword(item.getKeyword())
-                                .userId(item.getId())
-                                .voteNum(item.getVoteNum())
-                                .build())
+  /** Returns the events with the most votes in the last {@code window}, most votes first. */
+  public List<RsEventTrend> getTrending(Duration window, int size) {
+    if (window.isNegative() || window.isZero() || window.compareTo(trendingCounters.getMaxWindow()) > 0) {
+      throw new RequestNotValidException("invalid window");
+    }
+    if (size < 1 || size > MAX_TRENDING_SIZE) {
+      throw new RequestNotValidException("invalid size");
+    }
+    List<TrendingCounters.Trend> trends = trendingCounters.top(window, size);
+    if (trends.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Map<Integer, RsEventSummary> rsEvents = new HashMap<>();
+    rsEventRepository.findAllByIdIn(trends.stream().map(TrendingCounters.Trend::getRsEventId)
+            .collect(Collectors.toList()))
+            .forEach(rsEvent -> rsEvents.put(rsEvent.getId(), rsEvent));
+    return trends.stream()
+            .filter(trend -> rsEvents.containsKey(trend.getRsEventId()))
+            .map(trend -> RsEventTrend.builder()
+                    .rsEventId(trend.getRsEventId())
+                    .eventName(rsEvents.get(trend.getRsEventId()).getEventName())
+                    .keyword(rsEvents.get(trend.getRsEventId()).getKeyword())
+                    .voteNum(trend.getVoteNum())
+                    .build())
             .collect(Collectors.toList());
   }
 
+  private static RsEvent toRsEvent(RsEventDto item) {
+    return RsEvent.builder()
+            .eventName(item.getEventName())
+            .keyword(item.getKeyword())
+            .userId(item.getId())
+            .voteNum(item.getVoteNum())
+            .build();
+  }
+
+  private static RsEvent toRsEvent(RsEventSummary item) {
+    return RsEvent.builder()
+            .eventName(item.getEventName())
+            .keyword(item.getKeyword())
+            .userId(item.getId())
+            .voteNum(item.getVoteNum())
+            .build();
+  }
+
+  /**
+   * Debits the user and credits the event with conditional UPDATE statements in one
+   * transaction, so concurrent votes can neither overspend a user's votes nor lose an event's
+   * count. The hot event row is updated last to keep its lock short.
+   */
+  @Timed(value = METRIC_NAME, extraTags = {"operation", "vote"})
+  @Transactional
   public void vote(Vote vote, int rsEventId) {
-    Optional<RsEventDto> rsEventDto = rsEventRepository.findById(rsEventId);
-    Optional<UserDto> userDto = userRepository.findById(vote.getUserId());
-    if (!rsEventDto.isPresent()
-        || !userDto.isPresent()
-        || vote.getVoteNum() > userDto.get().getVoteNum()) {
+    int voteNum = vote.getVoteNum();
+    if (voteNum < 0 || userRepository.debitVotes(vote.getUserId(), voteNum) == 0) {
       throw new RuntimeException();
     }
-    VoteDto voteDto =
+    voteRepository.save(
         VoteDto.builder()
             .localDateTime(vote.getTime())
-            .num(vote.getVoteNum())
-            .rsEvent(rsEventDto.get())
-            .user(userDto.get())
-            .build();
-    voteRepository.save(voteDto);
-    UserDto user = userDto.get();
-    user.setVoteNum(user.getVoteNum() - vote.getVoteNum());
-    userRepository.save(user);
-    RsEventDto rsEvent = rsEventDto.get();
-    rsEvent.setVoteNum(rsEvent.getVoteNum() + vote.getVoteNum());
-    rsEventRepository.save(rsEvent);
+            .num(voteNum)
+            .rsEvent(RsEventDto.builder().id(rsEventId).build())
+            .user(UserDto.builder().id(vote.getUserId()).build())
+            .build());
+    boolean writeBehind = voteDeltaBuffer.isEnabled();
+    boolean credited = writeBehind
+        ? rsEventRepository.existsById(rsEventId)
+        : credit(rsEventId, voteNum);
+    if (!credited) {
+      throw new RuntimeException();
+    }
+    RsEventLeaderboardListener.afterCommit(() -> {
+      if (writeBehind) {
+        voteDeltaBuffer.add(rsEventId, voteNum);
+      }
+      rsEventLeaderboard.addVotes(rsEventId, voteNum);
+      trendingCounters.add(rsEventId, voteNum);
+    });
+  }
+
+  /**
+   * Votes for many events at once. Users and events are looked up with one query each, the vote
+   * records are inserted as a JDBC batch and every user and event is debited or credited once
+   * with its total, in id order so concurrent batches lock rows in the same order. A vote that
+   * cannot be applied is reported as failed and does not affect the others; the results are in
+   * the order of the given votes.
+   */
+  @Timed(value = METRIC_NAME, extraTags = {"operation", "voteAll"})
+  @Transactional
+  public List<VoteResult> voteAll(List<Vote> votes) {
+    if (votes == null || votes.isEmpty()) {
+      throw new RequestNotValidException("invalid votes");
+    }
+    Set<Integer> userIds = votes.stream().map(Vote::getUserId).collect(Collectors.toSet());
+    Set<Integer> rsEventIds = votes.stream().map(Vote::getRsEventId).collect(Collectors.toSet());
+    Map<Integer, Integer> votesLeft = new HashMap<>();
+    userRepository.findAllById(userIds).forEach(user -> votesLeft.put(user.getId(), user.getVoteNum()));
+    Set<Integer> existingRsEventIds = new HashSet<>(rsEventRepository.findExistingIds(rsEventIds));
+
+    VoteResult[] results = new VoteResult[votes.size()];
+    Map<Integer, Integer> debits = new TreeMap<>();
+    for (int index = 0; index < votes.size(); index++) {
+      Vote vote = votes.get(index);
+      String error = null;
+      if (vote.getVoteNum() < 0) {
+        error = "invalid vote num";
+      } else if (!votesLeft.containsKey(vote.getUserId())) {
+        error = "user not exist";
+      } else if (!existingRsEventIds.contains(vote.getRsEventId())) {
+        error = "rsevent is not exist";
+      } else if (votesLeft.get(vote.getUserId()) < vote.getVoteNum()) {
+        error = "vote num is not enough";
+      }
+      if (error != null) {
+        results[index] = VoteResult.rejected(vote, error);
+        continue;
+      }
+      votesLeft.merge(vote.getUserId(), -vote.getVoteNum(), Integer::sum);
+      debits.merge(vote.getUserId(), vote.getVoteNum(), Integer::sum);
+    }
+    debits.entrySet().removeIf(debit -> userRepository.debitVotes(debit.getKey(), debit.getValue()) == 0);
+
+    Map<Integer, Integer> credits = new TreeMap<>();
+    for (int index = 0; index < votes.size(); index++) {
+      Vote vote = votes.get(index);
+      if (results[index] == null && !debits.containsKey(vote.getUserId())) {
+        results[index] = VoteResult.rejected(vote, "vote num is not enough");
+      } else if (results[index] == null) {
+        credits.merge(vote.getRsEventId(), vote.getVoteNum(), Integer::sum);
+      }
+    }
+    boolean writeBehind = voteDeltaBuffer.isEnabled();
+    if (!writeBehind) {
+      // an event deleted since it was looked up only fails its own votes, their users get them back
+      credits.keySet().removeIf(rsEventId -> !credit(rsEventId, credits.get(rsEventId)));
+    }
+
+    List<VoteDto> voteDtos = new ArrayList<>();
+    Map<Integer, Integer> refunds = new TreeMap<>();
+    for (int index = 0; index < votes.size(); index++) {
+      Vote vote = votes.get(index);
+      if (results[index] != null) {
+        continue;
+      }
+      if (!credits.containsKey(vote.getRsEventId())) {
+        results[index] = VoteResult.rejected(vote, "rsevent is not exist");
+        refunds.merge(vote.getUserId(), vote.getVoteNum(), Integer::sum);
+        continue;
+      }
+      results[index] = VoteResult.accepted(vote);
+      voteDtos.add(
+          VoteDto.builder()
+              .localDateTime(vote.getTime())
+              .num(vote.getVoteNum())
+              .rsEvent(RsEventDto.builder().id(vote.getRsEventId()).build())
+              .user(UserDto.builder().id(vote.getUserId()).build())
+              .build());
+    }
+    refunds.forEach(userRepository::refundVotes);
+    voteRepository.saveAll(voteDtos);
+
+    RsEventLeaderboardListener.afterCommit(() -> credits.forEach((rsEventId, voteNum) -> {
+      if (writeBehind) {
+        voteDeltaBuffer.add(rsEventId, voteNum);
+      }
+      rsEventLeaderboard.addVotes(rsEventId, voteNum);
+      trendingCounters.add(rsEventId, voteNum);
+    }));
+    return Arrays.asList(results);
+  }
+
+  /** Adds the votes to one of the event's counter shards, or to its row if it has none. */
+  private boolean credit(int rsEventId, int voteNum) {
+    return shardedVoteCounter.isEnabled() && shardedVoteCounter.add(rsEventId, voteNum)
+        || rsEventRepository.addVotes(rsEventId, voteNum) > 0;
   }
 
+  /**
+   * Buys a rank for the event if the amount beats the rank's highest bid. Bids are settled by
+   * the {@link RankAuctionBook}; the winner replaces the rank's trade_only row and is kept in
+   * trade.
+   */
+  @Timed(value = METRIC_NAME, extraTags = {"operation", "buy"})
   public void buy(Trade trade, int eventId) {
     Optional<RsEventDto> rsEvent = rsEventRepository.findById(eventId);
-    Optional<TradeOnlyDto> existTrade = tradeOnlyRepository.findByRank(trade.getRank());
-    TradeOnlyDto tradeOnlyDto;
     if(!rsEvent.isPresent()) {
       throw new RuntimeException("rsevent is not exist");
     }
-    if(existTrade.isPresent()) {
-      tradeOnlyDto = existTrade.get();
-      if(tradeOnlyDto.getAmount() < trade.getAmount()) {
-        tradeOnlyDto.setRsEvent(rsEvent.get());
-        tradeOnlyDto.setAmount(trade.getAmount());
-      } else {
-        throw new AmountIsLessException("amount is less");
-      }
-    } else {
-      tradeOnlyDto = TradeOnlyDto.builder().rank(trade.getRank())
-              .amount(trade.getAmount()).rsEvent(rsEvent.get()).build();
+    boolean accepted = rankAuctionBook.bid(trade.getRank(), trade.getAmount(),
+            tradeOnlyDto -> saveTrade(trade, rsEvent.get(), tradeOnlyDto));
+    if (!accepted) {
+      throw new AmountIsLessException("amount is less");
     }
-    deleteTradeIfEventIsExistInTrade(eventId);
-    TradeOnlyDto tradeSave = tradeOnlyRepository.save(tradeOnlyDto);
-    tradeRepository.save(TradeDto.builder().rank(tradeSave.getRank())
-            .amount(tradeSave.getAmount()).rsEvent(tradeSave.getRsEvent()).build());
   }
 
-  private void deleteTradeIfEventIsExistInTrade(int eventId) {
+  private void saveTrade(Trade trade, RsEventDto rsEvent, TradeOnlyDto tradeOnlyDto) {
+    tradeOnlyDto.setRsEvent(rsEvent);
+    tradeOnlyDto.setAmount(trade.getAmount());
+    deleteTradeIfEventIsExistInTrade(rsEvent.getId(), trade.getRank());
+    tradeOnlyRepository.save(tradeOnlyDto);
+    tradeRepository.save(TradeDto.builder().rank(trade.getRank())
+            .amount(trade.getAmount()).rsEvent(rsEvent).build());
+  }
+
+  private void deleteTradeIfEventIsExistInTrade(int eventId, int rank) {
     Optional<TradeOnlyDto> hasExistEventInTrade = tradeOnlyRepository.findByRsEventId(eventId);
-    hasExistEventInTrade.ifPresent(tradeOnlyRepository::delete);
+    hasExistEventInTrade.filter(existTrade -> existTrade.getRank() != rank)
+            .ifPresent(tradeOnlyRepository::delete);
   }
 }
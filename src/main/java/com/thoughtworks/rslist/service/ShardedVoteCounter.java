@@ -0,0 +1,185 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.CacheConfig;
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.dto.VoteShardDto;
+import com.thoughtworks.rslist.repository.VoteShardRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads the votes credited to an rs event over {@code shards} counter rows. A vote updates the
+ * shard picked by the voting thread, so concurrent voters of one event lock different rows.
+ * Events get their shards at the first compaction after their first vote; until then votes go
+ * to rsEvent.vote_num directly. Compaction moves the shards' counts into rsEvent.vote_num every
+ * compaction interval and once more at start and shutdown, so vote_num lags by at most one
+ * interval while the in-memory ranking, credited after every commit, is exact. Compaction locks
+ * the shards it reads until it commits, so two instances never fold the same count twice, updates
+ * shards and events in id order, so it cannot deadlock with another instance compacting, and
+ * evicts the cached rs events it credited once it commits. Shards of deleted events are removed
+ * at start and every orphan cleanup interval.
+ */
+@Slf4j
+@Component
+public class ShardedVoteCounter {
+  private static final String CREDIT_SQL =
+      "update rs_event_vote_shard set vote_num = vote_num + ? where rs_event_id = ? and shard = ?";
+  private static final String PENDING_SQL =
+      "select id, rs_event_id, vote_num from rs_event_vote_shard where vote_num <> 0 order by id for update";
+  private static final String DEBIT_SHARD_SQL = "update rs_event_vote_shard set vote_num = vote_num - ? where id = ?";
+  private static final String CREDIT_EVENT_SQL = "update rs_event set vote_num = vote_num + ? where id = ?";
+  private static final String DELETE_ORPHANS_SQL =
+      "delete from rs_event_vote_shard where rs_event_id not in (select id from rs_event)";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final VoteShardRepository voteShardRepository;
+  private final CacheManager cacheManager;
+  private final RsListProperties.ShardedCounter properties;
+  private final boolean enabled;
+
+  private final Set<Integer> unsharded = ConcurrentHashMap.newKeySet();
+  private ScheduledExecutorService compactor;
+
+  public ShardedVoteCounter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            VoteShardRepository voteShardRepository, CacheManager cacheManager,
+                            RsListProperties properties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.voteShardRepository = voteShardRepository;
+    this.cacheManager = cacheManager;
+    this.properties = properties.getVote().getShardedCounter();
+    this.enabled = this.properties.isEnabled() && !properties.getVote().getWriteBehind().isEnabled();
+    if (this.properties.isEnabled() && !enabled) {
+      log.warn("rs.vote.sharded-counter is ignored because rs.vote.write-behind is enabled");
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    compact();
+    deleteOrphans();
+    compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "vote-shard-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long interval = properties.getCompactionInterval().toMillis();
+    compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    long cleanupInterval = properties.getOrphanCleanupInterval().toMillis();
+    compactor.scheduleWithFixedDelay(this::deleteOrphansQuietly, cleanupInterval, cleanupInterval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (compactor == null) {
+      return;
+    }
+    compactor.shutdown();
+    compactor.awaitTermination(properties.getCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+    compact();
+  }
+
+  /**
+   * Credits the votes to one of the event's shards within the caller's transaction.
+   *
+   * @return false if the event has no shards yet and the caller has to credit rsEvent itself
+   */
+  public boolean add(int rsEventId, int voteNum) {
+    int shard = (int) (Thread.currentThread().getId() % properties.getShards());
+    if (jdbcTemplate.update(CREDIT_SQL, voteNum, rsEventId, shard) > 0) {
+      return true;
+    }
+    unsharded.add(rsEventId);
+    return false;
+  }
+
+  /** Creates the shards of newly voted events and folds every shard's count into its event. */
+  public synchronized void compact() {
+    createShards();
+    transactionTemplate.executeWithoutResult(status -> {
+      List<Object[]> debits = new ArrayList<>();
+      Map<Integer, Long> credits = new TreeMap<>();
+      jdbcTemplate.query(PENDING_SQL, row -> {
+        long voteNum = row.getLong(3);
+        debits.add(new Object[] {voteNum, row.getInt(1)});
+        credits.merge(row.getInt(2), voteNum, Long::sum);
+      });
+      if (debits.isEmpty()) {
+        return;
+      }
+      List<Object[]> eventCredits = credits.entrySet().stream()
+          .map(credit -> new Object[] {credit.getValue(), credit.getKey()})
+          .collect(Collectors.toList());
+      jdbcTemplate.batchUpdate(DEBIT_SHARD_SQL, debits);
+      jdbcTemplate.batchUpdate(CREDIT_EVENT_SQL, eventCredits);
+      // the cache manager is transaction aware, so these run after the commit
+      Cache rsEvents = cacheManager.getCache(CacheConfig.RS_EVENTS);
+      if (rsEvents != null) {
+        credits.keySet().forEach(rsEvents::evict);
+      }
+    });
+  }
+
+  /** Removes the shards of events deleted since, whose counts have nowhere to go. */
+  public void deleteOrphans() {
+    jdbcTemplate.update(DELETE_ORPHANS_SQL);
+  }
+
+  private void createShards() {
+    for (Integer rsEventId : new ArrayList<>(unsharded)) {
+      unsharded.remove(rsEventId);
+      List<VoteShardDto> shards = IntStream.range(0, properties.getShards())
+          .mapToObj(shard -> VoteShardDto.builder().rsEventId(rsEventId).shard(shard).build())
+          .collect(Collectors.toList());
+      try {
+        voteShardRepository.saveAll(shards);
+      } catch (DataIntegrityViolationException e) {
+        log.debug("shards of rs event {} already exist", rsEventId);
+      }
+    }
+  }
+
+  private void compactQuietly() {
+    try {
+      compact();
+    } catch (RuntimeException e) {
+      log.warn("failed to compact vote shards, will retry", e);
+    }
+  }
+
+  private void deleteOrphansQuietly() {
+    try {
+      deleteOrphans();
+    } catch (RuntimeException e) {
+      log.warn("failed to delete the shards of deleted rs events, will retry", e);
+    }
+  }
+}
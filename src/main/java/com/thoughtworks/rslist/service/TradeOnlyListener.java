@@ -0,0 +1,46 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Tells the {@link RankingSnapshotPublisher} and the {@link RankAuctionBook} once a change to a
+ * bought rank has been committed.
+ */
+public class TradeOnlyListener {
+  private final ObjectProvider<RankingSnapshotPublisher> rankingSnapshotPublisher;
+  private final ObjectProvider<RankAuctionBook> rankAuctionBook;
+
+  public TradeOnlyListener(ObjectProvider<RankingSnapshotPublisher> rankingSnapshotPublisher,
+                           ObjectProvider<RankAuctionBook> rankAuctionBook) {
+    this.rankingSnapshotPublisher = rankingSnapshotPublisher;
+    this.rankAuctionBook = rankAuctionBook;
+  }
+
+  @PostPersist
+  @PostUpdate
+  public void onSave(TradeOnlyDto tradeOnlyDto) {
+    int rank = tradeOnlyDto.getRank();
+    int rsEventId = tradeOnlyDto.getRsEvent().getId();
+    int amount = tradeOnlyDto.getAmount();
+    RsEventLeaderboardListener.afterCommit(() -> {
+      rankAuctionBook.getObject().onSaved(rank, rsEventId, amount);
+      rankingSnapshotPublisher.getObject().onTradesChanged();
+    });
+  }
+
+  @PostRemove
+  public void onRemove(TradeOnlyDto tradeOnlyDto) {
+    int rank = tradeOnlyDto.getRank();
+    int rsEventId = tradeOnlyDto.getRsEvent().getId();
+    int amount = tradeOnlyDto.getAmount();
+    RsEventLeaderboardListener.afterCommit(() -> {
+      rankAuctionBook.getObject().onRemoved(rank, rsEventId, amount);
+      rankingSnapshotPublisher.getObject().onTradesChanged();
+    });
+  }
+}
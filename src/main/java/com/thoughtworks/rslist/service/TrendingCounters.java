@@ -0,0 +1,145 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Votes per rs event over the recent past, kept as a ring of time buckets per event so memory
+ * per event is fixed by the longest window. Top lists only count closed buckets, which no longer
+ * change, so each list is computed once per bucket and window and then served from memory; votes
+ * show up once their bucket closes. Events without votes for a whole ring are dropped.
+ */
+@Component
+public class TrendingCounters {
+  static final Comparator<Trend> ORDER =
+      Comparator.comparingLong(Trend::getVoteNum).reversed().thenComparingInt(Trend::getRsEventId);
+
+  private final long bucketMillis;
+  private final int bucketCount;
+  private final LongSupplier clock;
+  private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+  private final Map<List<Integer>, List<Trend>> topCache = new ConcurrentHashMap<>();
+  private volatile long topCacheBucket = -1;
+
+  @Autowired
+  public TrendingCounters(RsListProperties properties) {
+    this(properties, System::currentTimeMillis);
+  }
+
+  TrendingCounters(RsListProperties properties, LongSupplier clock) {
+    this.bucketMillis = properties.getTrending().getBucket().toMillis();
+    this.bucketCount = (int) (properties.getTrending().getMaxWindow().toMillis() / bucketMillis);
+    this.clock = clock;
+  }
+
+  public Duration getMaxWindow() {
+    return Duration.ofMillis(bucketMillis * bucketCount);
+  }
+
+  public void add(int rsEventId, int voteNum) {
+    long bucket = currentBucket();
+    while (!counters.computeIfAbsent(rsEventId, id -> new Counter(bucketCount)).add(bucket, voteNum)) {
+      // the counter was dropped as idle in the meantime, add to a fresh one
+    }
+  }
+
+  /** Returns the events with the most votes in the window ending now, most votes first. */
+  public List<Trend> top(Duration window, int size) {
+    long bucket = currentBucket();
+    if (bucket != topCacheBucket) {
+      topCache.clear();
+      topCacheBucket = bucket;
+    }
+    int buckets = (int) Math.min(bucketCount, Math.max(1, window.toMillis() / bucketMillis));
+    return topCache.computeIfAbsent(Arrays.asList(buckets, size), key -> computeTop(bucket, buckets, size));
+  }
+
+  /** The window ends with the last closed bucket. */
+  private List<Trend> computeTop(long bucket, int buckets, int size) {
+    PriorityQueue<Trend> heap = new PriorityQueue<>(size + 1, ORDER.reversed());
+    counters.forEach((rsEventId, counter) -> {
+      long voteNum = counter.sum(bucket - 1, buckets);
+      if (voteNum == 0) {
+        if (counter.retireIfIdleSince(bucket - bucketCount)) {
+          counters.remove(rsEventId, counter);
+        }
+        return;
+      }
+      heap.offer(new Trend(rsEventId, voteNum));
+      if (heap.size() > size) {
+        heap.poll();
+      }
+    });
+    List<Trend> top = new ArrayList<>(heap);
+    top.sort(ORDER);
+    return Collections.unmodifiableList(top);
+  }
+
+  private long currentBucket() {
+    return clock.getAsLong() / bucketMillis;
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static class Trend {
+    private final int rsEventId;
+    private final long voteNum;
+  }
+
+  private static class Counter {
+    private final long[] stamps;
+    private final long[] counts;
+    private long lastBucket;
+    private boolean retired;
+
+    Counter(int bucketCount) {
+      stamps = new long[bucketCount];
+      counts = new long[bucketCount];
+      Arrays.fill(stamps, -1);
+    }
+
+    synchronized boolean add(long bucket, int voteNum) {
+      if (retired) {
+        return false;
+      }
+      int slot = (int) (bucket % stamps.length);
+      if (stamps[slot] != bucket) {
+        stamps[slot] = bucket;
+        counts[slot] = 0;
+      }
+      counts[slot] += voteNum;
+      lastBucket = Math.max(lastBucket, bucket);
+      return true;
+    }
+
+    synchronized long sum(long lastIncluded, int buckets) {
+      long total = 0;
+      for (long bucket = lastIncluded - buckets + 1; bucket <= lastIncluded; bucket++) {
+        int slot = (int) (bucket % stamps.length);
+        if (bucket >= 0 && stamps[slot] == bucket) {
+          total += counts[slot];
+        }
+      }
+      return total;
+    }
+
+    synchronized boolean retireIfIdleSince(long bucket) {
+      retired = lastBucket < bucket;
+      return retired;
+    }
+  }
+}
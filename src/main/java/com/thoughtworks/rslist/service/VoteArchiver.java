@@ -0,0 +1,114 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.dto.VoteRollupDto;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteRollupRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the vote table small by moving old votes into vote_rollup, one row per user, event and
+ * day. Each chunk of votes is added to its rollups and deleted in the same transaction, so a
+ * reader sees every vote either as a row or inside a rollup, never both.
+ */
+@Slf4j
+@Component
+public class VoteArchiver {
+  private final VoteRepository voteRepository;
+  private final VoteRollupRepository voteRollupRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final RsListProperties.Archive properties;
+  private ScheduledExecutorService scheduler;
+
+  public VoteArchiver(VoteRepository voteRepository, VoteRollupRepository voteRollupRepository,
+                      TransactionTemplate transactionTemplate, RsListProperties properties) {
+    this.voteRepository = voteRepository;
+    this.voteRollupRepository = voteRollupRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.properties = properties.getVote().getArchive();
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!properties.isEnabled()) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "vote-archiver");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long interval = properties.getInterval().toMillis();
+    scheduler.scheduleWithFixedDelay(this::archiveQuietly, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /** Rolls up every vote recorded before the cutoff and returns how many were moved. */
+  public int archiveBefore(LocalDateTime cutoff) {
+    int archived = 0;
+    int moved;
+    do {
+      moved = transactionTemplate.execute(status -> archiveChunk(cutoff));
+      archived += moved;
+    } while (moved == properties.getChunkSize());
+    return archived;
+  }
+
+  private int archiveChunk(LocalDateTime cutoff) {
+    List<VoteDto> votes = voteRepository.findAllByLocalDateTimeBefore(
+        cutoff, PageRequest.of(0, properties.getChunkSize(), Sort.by("id")));
+    if (votes.isEmpty()) {
+      return 0;
+    }
+    Map<List<Object>, VoteRollupDto> rollups = new HashMap<>();
+    for (VoteDto vote : votes) {
+      int userId = vote.getUser().getId();
+      int rsEventId = vote.getRsEvent().getId();
+      LocalDate voteDay = vote.getLocalDateTime().toLocalDate();
+      VoteRollupDto rollup = rollups.computeIfAbsent(Arrays.asList(userId, rsEventId, voteDay), key ->
+          voteRollupRepository.findByUserIdAndRsEventIdAndVoteDay(userId, rsEventId, voteDay)
+              .orElseGet(() -> VoteRollupDto.builder()
+                  .userId(userId).rsEventId(rsEventId).voteDay(voteDay).build()));
+      rollup.setNum(rollup.getNum() + vote.getNum());
+      rollup.setVoteCount(rollup.getVoteCount() + 1);
+    }
+    voteRollupRepository.saveAll(rollups.values());
+    voteRepository.deleteAllByIdIn(votes.stream().map(VoteDto::getId).collect(Collectors.toList()));
+    return votes.size();
+  }
+
+  private void archiveQuietly() {
+    try {
+      int archived = archiveBefore(LocalDateTime.now().minus(properties.getRetention()));
+      if (archived > 0) {
+        log.info("rolled up {} votes", archived);
+      }
+    } catch (RuntimeException e) {
+      log.warn("failed to roll up old votes, will retry", e);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.CacheConfig;
+import com.thoughtworks.rslist.config.RsListProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind buffer for the votes credited to rs events. Each event gets a {@link LongAdder}
+ * so that concurrent voters do not contend on a single cell; the buffered deltas are added to
+ * rsEvent.vote_num with one batched UPDATE per event every flush interval, as soon as the flush
+ * threshold is reached, and once more when the application shuts down. Events that got no votes
+ * between two flushes are dropped from the buffer.
+ */
+@Slf4j
+@Component
+public class VoteDeltaBuffer {
+  private static final String CREDIT_SQL = "update rs_event set vote_num = vote_num + ? where id = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final CacheManager cacheManager;
+  private final RsListProperties.WriteBehind properties;
+
+  private final Map<Integer, Delta> deltas = new ConcurrentHashMap<>();
+  private final AtomicLong pending = new AtomicLong();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private ScheduledExecutorService flusher;
+
+  public VoteDeltaBuffer(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                         CacheManager cacheManager, RsListProperties properties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.cacheManager = cacheManager;
+    this.properties = properties.getVote().getWriteBehind();
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!isEnabled()) {
+      return;
+    }
+    flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "vote-delta-flusher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long interval = properties.getFlushInterval().toMillis();
+    flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (flusher == null) {
+      return;
+    }
+    flusher.shutdown();
+    flusher.awaitTermination(properties.getFlushInterval().toMillis() * 2, TimeUnit.MILLISECONDS);
+    flush();
+  }
+
+  public void add(int rsEventId, int voteNum) {
+    buffer(rsEventId, voteNum);
+    if (pending.addAndGet(voteNum) >= properties.getFlushThreshold()
+        && flusher != null && flushScheduled.compareAndSet(false, true)) {
+      flusher.execute(this::flushQuietly);
+    }
+  }
+
+  public long getPending() {
+    return pending.get();
+  }
+
+  int getBufferedEvents() {
+    return deltas.size();
+  }
+
+  /**
+   * Writes all buffered deltas in one JDBC batch and transaction and evicts the cached events they
+   * changed; a failed batch is put back into the buffer as a whole.
+   */
+  public synchronized void flush() {
+    flushScheduled.set(false);
+    List<Object[]> credits = new ArrayList<>();
+    for (Map.Entry<Integer, Delta> entry : deltas.entrySet()) {
+      long delta = entry.getValue().drain();
+      if (delta != 0) {
+        credits.add(new Object[] {delta, entry.getKey()});
+      } else {
+        deltas.computeIfPresent(entry.getKey(), (rsEventId, idle) -> idle.retire() ? null : idle);
+      }
+    }
+    if (credits.isEmpty()) {
+      return;
+    }
+    long flushed = credits.stream().mapToLong(credit -> (long) credit[0]).sum();
+    try {
+      transactionTemplate.executeWithoutResult(status -> {
+        jdbcTemplate.batchUpdate(CREDIT_SQL, credits);
+        // the cache manager is transaction aware, so these run after the commit
+        Cache rsEvents = cacheManager.getCache(CacheConfig.RS_EVENTS);
+        if (rsEvents != null) {
+          credits.forEach(credit -> rsEvents.evict(credit[1]));
+        }
+      });
+      pending.addAndGet(-flushed);
+    } catch (RuntimeException e) {
+      for (Object[] credit : credits) {
+        buffer((Integer) credit[1], (long) credit[0]);
+      }
+      throw e;
+    }
+  }
+
+  private void buffer(int rsEventId, long voteNum) {
+    while (true) {
+      Delta delta = deltas.computeIfAbsent(rsEventId, id -> new Delta());
+      delta.votes.add(voteNum);
+      if (!delta.retired) {
+        return;
+      }
+      // the delta is being dropped by a flush, take the votes back and use its successor
+      delta.votes.add(-voteNum);
+    }
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      log.warn("failed to flush buffered votes, will retry", e);
+    }
+  }
+
+  private static class Delta {
+    private final LongAdder votes = new LongAdder();
+    private volatile boolean retired;
+
+    /** Takes out what was added so far; votes added meanwhile stay for the next flush. */
+    long drain() {
+      long drained = votes.sum();
+      votes.add(-drained);
+      return drained;
+    }
+
+    /**
+     * Retires the delta unless votes were added since it was drained. The flag is raised before
+     * the check, so a concurrent {@link #buffer} either is seen here or sees the flag itself.
+     */
+    boolean retire() {
+      retired = true;
+      if (votes.sum() != 0) {
+        retired = false;
+        return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteIngestionStats;
+import com.thoughtworks.rslist.domain.VoteResult;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.stream.Collectors;
+
+/**
+ * Queues votes and applies them in the background. Votes are sharded by rs event, each shard
+ * has a bounded queue and exactly one writer thread, so an event's counter is only ever updated
+ * by one writer. A writer takes whatever is queued, up to the batch size, and applies it with
+ * {@link RsService#voteAll}. A batch that lost a deadlock is retried; if it still fails its votes
+ * are applied one by one, so a vote that was already answered with 202 is only dropped when it
+ * cannot be applied on its own.
+ */
+@Slf4j
+@Component
+public class VoteIngestionPipeline {
+  private static final long POLL_MILLIS = 100;
+
+  private final RsService rsService;
+  private final RsEventLeaderboard rsEventLeaderboard;
+  private final RsListProperties.Async properties;
+  private final List<BlockingQueue<PendingVote>> queues = new ArrayList<>();
+
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong applied = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong lastDrainLatency = new AtomicLong();
+  private final LongAccumulator maxDrainLatency = new LongAccumulator(Math::max, 0);
+
+  private volatile boolean running;
+  private ExecutorService writers;
+
+  public VoteIngestionPipeline(RsService rsService, RsEventLeaderboard rsEventLeaderboard,
+                               RsListProperties properties) {
+    this.rsService = rsService;
+    this.rsEventLeaderboard = rsEventLeaderboard;
+    this.properties = properties.getVote().getAsync();
+    if (this.properties.isEnabled()) {
+      for (int shard = 0; shard < this.properties.getShards(); shard++) {
+        queues.add(new ArrayBlockingQueue<>(this.properties.getQueueCapacity()));
+      }
+    }
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled();
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!isEnabled()) {
+      return;
+    }
+    running = true;
+    AtomicInteger threadNumber = new AtomicInteger();
+    writers = Executors.newFixedThreadPool(queues.size(), runnable -> {
+      Thread thread = new Thread(runnable, "vote-writer-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    queues.forEach(queue -> writers.execute(() -> drain(queue)));
+  }
+
+  /** Stops taking votes and lets the writers apply what is already queued. */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (writers == null) {
+      return;
+    }
+    running = false;
+    writers.shutdown();
+    if (!writers.awaitTermination(30, TimeUnit.SECONDS)) {
+      log.warn("{} queued votes were not applied before shutdown", queueDepth());
+    }
+  }
+
+  /**
+   * Checks what can be checked without the database and queues the vote. Returns false when the
+   * event's shard is full.
+   */
+  public boolean submit(Vote vote) {
+    if (vote.getVoteNum() < 0) {
+      throw new RequestNotValidException("invalid vote num");
+    }
+    if (rsEventLeaderboard.isEnabled() && rsEventLeaderboard.indexOf(vote.getRsEventId()) < 0) {
+      throw new RequestNotValidException("invalid id");
+    }
+    BlockingQueue<PendingVote> queue = queues.get(Math.floorMod(vote.getRsEventId(), queues.size()));
+    if (!queue.offer(new PendingVote(vote, System.nanoTime()))) {
+      rejected.incrementAndGet();
+      return false;
+    }
+    accepted.incrementAndGet();
+    return true;
+  }
+
+  public VoteIngestionStats getStats() {
+    return VoteIngestionStats.builder()
+        .enabled(isEnabled())
+        .queueDepth(queueDepth())
+        .queueCapacity(queues.size() * properties.getQueueCapacity())
+        .accepted(accepted.get())
+        .rejected(rejected.get())
+        .applied(applied.get())
+        .failed(failed.get())
+        .lastDrainLatencyMillis(TimeUnit.NANOSECONDS.toMillis(lastDrainLatency.get()))
+        .maxDrainLatencyMillis(TimeUnit.NANOSECONDS.toMillis(maxDrainLatency.get()))
+        .build();
+  }
+
+  private int queueDepth() {
+    return queues.stream().mapToInt(BlockingQueue::size).sum();
+  }
+
+  private void drain(BlockingQueue<PendingVote> queue) {
+    List<PendingVote> batch = new ArrayList<>(properties.getBatchSize());
+    while (running || !queue.isEmpty()) {
+      try {
+        PendingVote first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, properties.getBatchSize() - 1);
+        apply(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  void apply(List<PendingVote> batch) {
+    List<Vote> votes = batch.stream().map(pending -> pending.vote).collect(Collectors.toList());
+    try {
+      count(voteAll(votes));
+    } catch (RuntimeException e) {
+      log.warn("failed to apply {} queued votes, applying them one by one", votes.size(), e);
+      votes.forEach(this::applyAlone);
+    }
+    long latency = System.nanoTime() - batch.get(0).enqueuedAt;
+    lastDrainLatency.set(latency);
+    maxDrainLatency.accumulate(latency);
+  }
+
+  private void applyAlone(Vote vote) {
+    try {
+      count(voteAll(Collections.singletonList(vote)));
+    } catch (RuntimeException e) {
+      failed.incrementAndGet();
+      log.warn("failed to apply queued vote of user {} for rs event {}", vote.getUserId(), vote.getRsEventId(), e);
+    }
+  }
+
+  /** Runs {@link RsService#voteAll}, trying again while it loses deadlocks or lock waits. */
+  private List<VoteResult> voteAll(List<Vote> votes) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return rsService.voteAll(votes);
+      } catch (TransientDataAccessException e) {
+        if (attempt >= properties.getMaxAttempts()) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private void count(List<VoteResult> results) {
+    long succeeded = results.stream().filter(VoteResult::isSuccess).count();
+    applied.addAndGet(succeeded);
+    failed.addAndGet(results.size() - succeeded);
+  }
+
+  @AllArgsConstructor
+  static class PendingVote {
+    private final Vote vote;
+    private final long enqueuedAt;
+  }
+}
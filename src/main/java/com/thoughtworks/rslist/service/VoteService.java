@@ -1,32 +1,114 @@
 package com.thoughtworks.rslist.service;
 
+import com.thoughtworks.rslist.config.ReplicaRead;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteRecordPage;
+import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.dto.VoteRollupDto;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
 import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteRollupRepository;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * Reads a user's votes for an event. Votes that were rolled up by the {@link VoteArchiver} come
+ * first, one per day, followed by the votes still in the vote table.
+ */
 @Service
 public class VoteService {
+    public static final int DEFAULT_PAGE_SIZE = 5;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final String ROLLUP_CURSOR_PREFIX = "r";
+
     final VoteRepository voteRepository;
+    final VoteRollupRepository voteRollupRepository;
 
-    public VoteService(VoteRepository voteRepository) {
+    public VoteService(VoteRepository voteRepository, VoteRollupRepository voteRollupRepository) {
         this.voteRepository = voteRepository;
+        this.voteRollupRepository = voteRollupRepository;
+    }
+
+    @ReplicaRead
+    @Transactional(readOnly = true)
+    public VoteRecordPage getVoteRecord(int userId, int rsEventId, int pageIndex, int pageSize) {
+        if (pageIndex < 1) {
+            throw new RequestNotValidException("invalid page index");
+        }
+        checkPageSize(pageSize);
+        List<VoteRollupDto> rollups = voteRollupRepository.findAllByUserIdAndRsEventId(
+                userId, rsEventId, PageRequest.of(pageIndex - 1, pageSize, Sort.by("id")));
+        List<VoteDto> votes = Collections.emptyList();
+        if (rollups.size() < pageSize) {
+            long offset = (long) (pageIndex - 1) * pageSize;
+            long liveOffset = rollups.isEmpty()
+                    ? offset - voteRollupRepository.countByUserIdAndRsEventId(userId, rsEventId) : 0;
+            votes = voteRepository.findPage(userId, rsEventId, (int) liveOffset, pageSize - rollups.size());
+        }
+        return toPage(rollups, votes, pageSize);
+    }
+
+    /**
+     * Returns the votes after the one the cursor points to. Both tables are read with a seek on
+     * their (user, event, id) order, so every page costs the same however deep it is.
+     */
+    @Transactional(readOnly = true)
+    public VoteRecordPage getVoteRecordAfter(int userId, int rsEventId, String cursor, int pageSize) {
+        checkPageSize(pageSize);
+        List<VoteRollupDto> rollups = Collections.emptyList();
+        int afterVoteId = 0;
+        try {
+            if (cursor == null || cursor.startsWith(ROLLUP_CURSOR_PREFIX)) {
+                int afterRollupId = cursor == null ? 0 : Integer.parseInt(cursor.substring(1));
+                rollups = voteRollupRepository.findPageAfter(
+                        userId, rsEventId, afterRollupId, PageRequest.of(0, pageSize));
+            } else {
+                afterVoteId = Integer.parseInt(cursor);
+            }
+        } catch (NumberFormatException e) {
+            throw new RequestNotValidException("invalid cursor");
+        }
+        List<VoteDto> votes = Collections.emptyList();
+        if (rollups.size() < pageSize) {
+            votes = voteRepository.findPageAfter(
+                    userId, rsEventId, afterVoteId, PageRequest.of(0, pageSize - rollups.size()));
+        }
+        return toPage(rollups, votes, pageSize);
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new RequestNotValidException("invalid page size");
+        }
     }
-    public List<Vote> getVoteRecord(@RequestParam int userId, @RequestParam int rsEventId, @RequestParam int pageIndex) {
-        Pageable pageable = PageRequest.of(pageIndex - 1, 5);
-        return voteRepository.findAllByUserIdAndRsEventId(userId, rsEventId, pageable).stream()
-                .map(item ->
-                            Vote.builder()
-                                .voteNum(item.getNum())
-                                .userId(item.getUser().getId())
-                                .time(item.getLocalDateTime())
-                                .rsEventId(item.getRsEvent().getId())
-                                .build())
-                .collect(Collectors.toList());
+
+    private static VoteRecordPage toPage(List<VoteRollupDto> rollups, List<VoteDto> voteDtos, int pageSize) {
+        List<Vote> votes = new ArrayList<>();
+        String lastCursor = null;
+        for (VoteRollupDto rollup : rollups) {
+            votes.add(Vote.builder()
+                    .voteNum(rollup.getNum())
+                    .userId(rollup.getUserId())
+                    .time(rollup.getVoteDay().atStartOfDay())
+                    .rsEventId(rollup.getRsEventId())
+                    .build());
+            lastCursor = ROLLUP_CURSOR_PREFIX + rollup.getId();
+        }
+        for (VoteDto item : voteDtos) {
+            votes.add(Vote.builder()
+                    .voteNum(item.getNum())
+                    .userId(item.getUser().getId())
+                    .time(item.getLocalDateTime())
+                    .rsEventId(item.getRsEvent().getId())
+                    .build());
+            lastCursor = String.valueOf(item.getId());
+        }
+        return new VoteRecordPage(votes, votes.size() < pageSize ? null : lastCursor);
     }
 }
@@ -0,0 +1,141 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.config.DatabaseBulkhead;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.exception.DatabaseBusyException;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import com.thoughtworks.rslist.repository.TradeRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteRollupRepository;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class CacheControllerTest {
+  @Autowired MockMvc mockMvc;
+  @Autowired UserRepository userRepository;
+  @Autowired RsEventRepository rsEventRepository;
+  @Autowired VoteRepository voteRepository;
+  @Autowired VoteRollupRepository voteRollupRepository;
+  @Autowired TradeRepository tradeRepository;
+  @Autowired TradeOnlyRepository tradeOnlyRepository;
+  @Autowired DatabaseBulkhead databaseBulkhead;
+  private UserDto userDto;
+
+  @BeforeEach
+  void setUp() {
+    voteRollupRepository.deleteAll();
+    voteRepository.deleteAll();
+    tradeOnlyRepository.deleteAll();
+    tradeRepository.deleteAll();
+    rsEventRepository.deleteAll();
+    userRepository.deleteAll();
+    userDto =
+        UserDto.builder()
+            .voteNum(10)
+            .phone("18888888888")
+            .gender("female")
+            .email("a@b.com")
+            .age(19)
+            .userName("idolice")
+            .build();
+  }
+
+  @Test
+  public void shouldServeRepeatedLookupFromCache() throws Exception {
+    UserDto save = userRepository.save(userDto);
+
+    userRepository.findById(save.getId());
+    userRepository.findById(save.getId());
+
+    mockMvc
+        .perform(get("/cache/stats"))
+        .andExpect(jsonPath("$[*].name", hasItem("users")))
+        .andExpect(jsonPath("$[?(@.name == 'users')].hitCount", hasItem(greaterThanOrEqualTo(1))))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  public void shouldEvictUserWhenVotesAreDebited() {
+    UserDto save = userRepository.save(userDto);
+    userRepository.findById(save.getId());
+
+    userRepository.debitVotes(save.getId(), 3);
+
+    assertEquals(7, userRepository.findById(save.getId()).get().getVoteNum());
+  }
+
+  @Test
+  public void shouldEvictUserWhenItIsSaved() {
+    UserDto save = userRepository.save(userDto);
+    userRepository.findById(save.getId());
+    save.setVoteNum(4);
+
+    userRepository.save(save);
+
+    assertEquals(4, userRepository.findById(save.getId()).get().getVoteNum());
+  }
+
+  @Test
+  public void shouldServeCachedLookupWithoutWaitingForTheBulkhead() throws Throwable {
+    UserDto save = userRepository.save(userDto);
+    userRepository.findById(save.getId());
+    CountDownLatch release = new CountDownLatch(1);
+    DatabaseBulkhead.Pool primary = databaseBulkhead.getPools().get(0);
+    List<Thread> holders = new ArrayList<>();
+    for (int i = 0; i < primary.getPermits(); i++) {
+      ProceedingJoinPoint slow = mock(ProceedingJoinPoint.class);
+      when(slow.proceed()).thenAnswer(invocation -> release.await(10, TimeUnit.SECONDS));
+      Thread holder = new Thread(() -> {
+        try {
+          databaseBulkhead.guard(slow);
+        } catch (Throwable e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      holder.start();
+      holders.add(holder);
+    }
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    try {
+      while (primary.getInUse() < primary.getPermits()) {
+        Thread.sleep(10);
+      }
+
+      assertEquals(10, userRepository.findById(save.getId()).get().getVoteNum());
+      assertThrows(DatabaseBusyException.class, () -> rsEventRepository.count());
+    } finally {
+      RequestContextHolder.resetRequestAttributes();
+      release.countDown();
+      for (Thread holder : holders) {
+        holder.join();
+      }
+    }
+  }
+}
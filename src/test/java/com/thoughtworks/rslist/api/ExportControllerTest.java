@@ -0,0 +1,98 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import com.thoughtworks.rslist.repository.TradeRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ExportControllerTest {
+  @Autowired MockMvc mockMvc;
+  @Autowired UserRepository userRepository;
+  @Autowired RsEventRepository rsEventRepository;
+  @Autowired VoteRepository voteRepository;
+  @Autowired VoteRollupRepository voteRollupRepository;
+  @Autowired TradeOnlyRepository tradeOnlyRepository;
+  @Autowired TradeRepository tradeRepository;
+  UserDto userDto;
+
+  @BeforeEach
+  void setUp() {
+    voteRollupRepository.deleteAll();
+    voteRepository.deleteAll();
+    tradeOnlyRepository.deleteAll();
+    tradeRepository.deleteAll();
+    rsEventRepository.deleteAll();
+    userRepository.deleteAll();
+    userDto = userRepository.save(UserDto.builder().userName("idolice").age(19).email("a@b.com")
+        .gender("female").phone("18888888888").voteNum(10).build());
+  }
+
+  @Test
+  public void shouldExportRankingWithBoughtRankInPlace() throws Exception {
+    RsEventDto first = rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the one event").user(userDto).voteNum(5).build());
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the two event").user(userDto).voteNum(4).build());
+    RsEventDto bought = rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the three event").user(userDto).voteNum(1).build());
+    tradeOnlyRepository.save(TradeOnlyDto.builder().rank(1).amount(10).rsEvent(bought).build());
+
+    String[] lines = export("/export/rs/list").split("\n");
+
+    assertEquals(3, lines.length);
+    assertEquals(String.format("{\"rank\":1,\"rsEventId\":%d,\"eventName\":\"the three event\","
+        + "\"keyword\":\"none\",\"voteNum\":1,\"paid\":true}", bought.getId()), lines[0]);
+    assertEquals(String.format("{\"rank\":2,\"rsEventId\":%d,\"eventName\":\"the one event\","
+        + "\"keyword\":\"none\",\"voteNum\":5,\"paid\":false}", first.getId()), lines[1]);
+  }
+
+  @Test
+  public void shouldExportVotes() throws Exception {
+    RsEventDto rsEventDto = rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the one event").user(userDto).voteNum(3).build());
+    voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).num(1)
+        .localDateTime(LocalDateTime.of(2020, 5, 1, 8, 0)).build());
+    voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).num(2)
+        .localDateTime(LocalDateTime.of(2020, 5, 2, 8, 0)).build());
+
+    String[] lines = export("/export/votes").split("\n");
+
+    assertEquals(2, lines.length);
+    assertEquals(String.format("{\"userId\":%d,\"rsEventId\":%d,\"time\":\"2020-05-01T08:00:00\",\"voteNum\":1}",
+        userDto.getId(), rsEventDto.getId()), lines[0]);
+  }
+
+  private String export(String path) throws Exception {
+    MvcResult result = mockMvc.perform(get(path)).andExpect(request().asyncStarted()).andReturn();
+    assertEquals(Duration.ofMinutes(30).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+    return mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("application/x-ndjson"))
+        .andReturn().getResponse().getContentAsString();
+  }
+}
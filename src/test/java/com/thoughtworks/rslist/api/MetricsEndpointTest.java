@@ -0,0 +1,41 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.service.RankingPayloadCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MetricsEndpointTest {
+  @Autowired MockMvc mockMvc;
+  @Autowired RsEventRepository rsEventRepository;
+  @Autowired RankingPayloadCache rankingPayloadCache;
+
+  @Test
+  public void shouldExposeServiceRepositoryAndRankingMetrics() throws Exception {
+    rsEventRepository.count();
+    mockMvc.perform(get("/rs/list")).andExpect(status().isOk());
+
+    mockMvc
+        .perform(get("/actuator/prometheus"))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString(rankingPayloadCache.isEnabled()
+            ? "rs_service_seconds_count{class=\"com.thoughtworks.rslist.service.RankingPayloadCache\","
+                + "exception=\"none\",method=\"get\",operation=\"getRsListPayload\",}"
+            : "rs_service_seconds_count{class=\"com.thoughtworks.rslist.service.RsService\","
+                + "exception=\"none\",method=\"getRsEventsBetween\",operation=\"getRsEventsBetween\",}")))
+        .andExpect(content().string(containsString(
+            "rs_repository_seconds_count{exception=\"none\",method=\"count\",repository=\"RsEventRepository\",}")))
+        .andExpect(content().string(containsString("http_server_requests_seconds_bucket{")))
+        .andExpect(content().string(containsString("rs_ranking_paid_slots ")));
+  }
+}
@@ -0,0 +1,119 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import com.thoughtworks.rslist.repository.UserRepository;
+import com.thoughtworks.rslist.repository.VoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs the application on two embedded databases. The replica starts as a copy of the primary
+ * and is then changed behind its back, so every answer shows which database it came from.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:rs-primary;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "rs.replica.enabled=true",
+    "rs.replica.url=" + ReplicaReadTest.REPLICA_URL,
+    "rs.replica.username=sa"})
+@AutoConfigureMockMvc
+class ReplicaReadTest {
+  static final String REPLICA_URL = "jdbc:h2:mem:rs-replica;DB_CLOSE_DELAY=-1";
+
+  @Autowired MockMvc mockMvc;
+  @Autowired DataSource dataSource;
+  @Autowired UserRepository userRepository;
+  @Autowired RsEventRepository rsEventRepository;
+  @Autowired VoteRepository voteRepository;
+  JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+  UserDto userDto;
+  RsEventDto rsEventDto;
+
+  @BeforeEach
+  void setUp() {
+    userDto = userRepository.save(UserDto.builder().userName("idolice").age(19).email("a@b.com")
+        .gender("female").phone("18888888888").voteNum(10).build());
+    rsEventDto = rsEventRepository.save(RsEventDto.builder().user(userDto).eventName("event name")
+        .keyword("keyword").voteNum(0).build());
+    voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).localDateTime(LocalDateTime.now())
+        .num(5).build());
+    replica.execute("drop all objects");
+    new JdbcTemplate(dataSource).queryForList("script", String.class).forEach(replica::execute);
+    replica.update("update vote set num = 9");
+  }
+
+  @AfterEach
+  void tearDown() {
+    voteRepository.deleteAll();
+    rsEventRepository.deleteAll();
+    userRepository.deleteAll();
+  }
+
+  @Test
+  public void shouldReadVoteRecordFromReplica() throws Exception {
+    mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+        .param("rsEventId", String.valueOf(rsEventDto.getId())).param("pageIndex", "1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].voteNum", is(9)));
+  }
+
+  @Test
+  public void shouldUseUserJustCreatedWhileReplicaLags() throws Exception {
+    mockMvc.perform(post("/user").content("{\"userName\":\"xiaoming\",\"age\":19,\"gender\":\"male\","
+        + "\"email\":\"a@b.com\",\"phone\":\"18888888888\",\"voteNum\":10}")
+        .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+    int userId = userRepository.findAll().stream()
+        .filter(user -> user.getUserName().equals("xiaoming")).findFirst().get().getId();
+    assertEquals(0, replica.queryForObject("select count(*) from \"USER\" where id = ?", Integer.class, userId)
+        .intValue());
+
+    mockMvc.perform(post("/rs/event").content(String.format(
+        "{\"eventName\":\"new event\",\"keyword\":\"keyword\",\"userId\":%d}", userId))
+        .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isCreated());
+    int rsEventId = new JdbcTemplate(dataSource)
+        .queryForObject("select id from rs_event where event_name = 'new event'", Integer.class);
+    String vote = String.format("{\"userId\":%d,\"time\":\"%s\",\"voteNum\":1}", userId, LocalDateTime.now());
+    mockMvc.perform(post("/rs/vote/{id}", rsEventId).content(vote).contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/rs/{id}/rank", rsEventId))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  public void shouldWriteVotesToPrimary() throws Exception {
+    String vote = String.format("{\"userId\":%d,\"time\":\"%s\",\"voteNum\":1}", userDto.getId(), LocalDateTime.now());
+    mockMvc.perform(post("/rs/vote/{id}", rsEventDto.getId()).content(vote).contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().is2xxSuccessful());
+
+    JdbcTemplate primary = new JdbcTemplate(dataSource);
+    assertEquals(2, primary.queryForObject("select count(*) from vote", Integer.class).intValue());
+    assertEquals(1, replica.queryForObject("select count(*) from vote", Integer.class).intValue());
+  }
+}
@@ -0,0 +1,218 @@
+package com.thoughtworks.rslist.api;
+
+import com.thoughtworks.rslist.domain.RsEvent;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.TradeDto;
+import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import com.thoughtworks.rslist.dto.UserDto;
+import com.thoughtworks.rslist.domain.VoteIngestionStats;
+import com.thoughtworks.rslist.dto.VoteDto;
+import com.thoughtworks.rslist.repository.*;
+import com.thoughtworks.rslist.service.RsEventLeaderboard;
+import com.thoughtworks.rslist.service.ShardedVoteCounter;
+import com.thoughtworks.rslist.service.VoteDeltaBuffer;
+import com.thoughtworks.rslist.service.VoteIngestionPipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fires concurrent votes and buys at a running server and checks that no vote was lost or
+ * created and that no rank was sold twice. Excluded from {@code test}; run it with
+ * {@code ./gradlew loadTest}, sized with -Dload.threads and -Dload.requests. It brings its own
+ * in-memory H2 database, so it never touches the MySQL schema of application.yml.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "spring.datasource.url=jdbc:h2:mem:rs-load;DB_CLOSE_DELAY=-1",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password="})
+class RsControllerLoadTest {
+  private static final int USERS = 50;
+  private static final int VOTES_PER_USER = 1000;
+  private static final int RS_EVENTS = 20;
+  private static final int RANKS = 5;
+  private static final int THREADS = Integer.getInteger("load.threads", 32);
+  private static final int REQUESTS = Integer.getInteger("load.requests", 5000);
+
+  @Autowired TestRestTemplate restTemplate;
+  @Autowired UserRepository userRepository;
+  @Autowired RsEventRepository rsEventRepository;
+  @Autowired VoteRepository voteRepository;
+  @Autowired VoteRollupRepository voteRollupRepository;
+  @Autowired TradeOnlyRepository tradeOnlyRepository;
+  @Autowired TradeRepository tradeRepository;
+  @Autowired RsEventLeaderboard rsEventLeaderboard;
+  @Autowired ShardedVoteCounter shardedVoteCounter;
+  @Autowired VoteDeltaBuffer voteDeltaBuffer;
+  @Autowired VoteIngestionPipeline voteIngestionPipeline;
+  @Autowired VoteShardRepository voteShardRepository;
+  List<Integer> userIds = new ArrayList<>();
+  List<Integer> rsEventIds = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    cleanUp();
+    for (int user = 0; user < USERS; user++) {
+      UserDto userDto = userRepository.save(UserDto.builder().userName("load" + user).age(20)
+          .email("a@b.com").gender("female").phone("18888888888").voteNum(VOTES_PER_USER).build());
+      userIds.add(userDto.getId());
+    }
+    UserDto owner = userRepository.findById(userIds.get(0)).get();
+    for (int event = 0; event < RS_EVENTS; event++) {
+      rsEventIds.add(rsEventRepository.save(RsEventDto.builder().eventName("event " + event)
+          .keyword("load").voteNum(0).user(owner).build()).getId());
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    cleanUp();
+  }
+
+  @Test
+  public void shouldKeepVotesAndRanksConsistentUnderConcurrentVotesAndBuys() throws Exception {
+    long[] latencies = new long[REQUESTS];
+    AtomicInteger accepted = new AtomicInteger();
+    AtomicInteger next = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    long started = System.nanoTime();
+    for (int thread = 0; thread < THREADS; thread++) {
+      executor.execute(() -> {
+        for (int request = next.getAndIncrement(); request < REQUESTS; request = next.getAndIncrement()) {
+          long sent = System.nanoTime();
+          if (send().getStatusCode().is2xxSuccessful()) {
+            accepted.incrementAndGet();
+          }
+          latencies[request] = System.nanoTime() - sent;
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.MINUTES));
+    report(latencies, accepted.get(), System.nanoTime() - started);
+
+    assertVotesAreConserved();
+    assertEveryRankIsSoldOnce();
+  }
+
+  private ResponseEntity<String> send() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int rsEventId = rsEventIds.get(random.nextInt(RS_EVENTS));
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    if (random.nextInt(10) < 8) {
+      String vote = String.format("{\"userId\":%d,\"time\":\"%s\",\"voteNum\":%d}",
+          userIds.get(random.nextInt(USERS)), LocalDateTime.now(), 1 + random.nextInt(3));
+      return restTemplate.postForEntity("/rs/vote/{id}", new HttpEntity<>(vote, headers), String.class, rsEventId);
+    }
+    String trade = String.format("{\"amount\":%d,\"rank\":%d}", 1 + random.nextInt(1000), 1 + random.nextInt(RANKS));
+    return restTemplate.postForEntity("/rs/buy/{id}", new HttpEntity<>(trade, headers), String.class, rsEventId);
+  }
+
+  private void assertVotesAreConserved() throws InterruptedException {
+    if (voteIngestionPipeline.isEnabled()) {
+      awaitQueuedVotes();
+    }
+    if (voteDeltaBuffer.isEnabled()) {
+      voteDeltaBuffer.flush();
+    }
+    if (shardedVoteCounter.isEnabled()) {
+      shardedVoteCounter.compact();
+    }
+    long left = userRepository.findAll().stream()
+        .filter(userDto -> userIds.contains(userDto.getId()))
+        .mapToLong(UserDto::getVoteNum)
+        .sum();
+    List<RsEventDto> rsEvents = rsEventRepository.findAll();
+    long credited = rsEvents.stream().mapToLong(RsEventDto::getVoteNum).sum();
+    long recorded = voteRepository.findAll().stream().mapToLong(VoteDto::getNum).sum();
+    assertEquals((long) USERS * VOTES_PER_USER, left + credited);
+    assertEquals(credited, recorded);
+    if (rsEventLeaderboard.isEnabled()) {
+      Map<Integer, Integer> voteNums = rsEvents.stream()
+          .collect(Collectors.toMap(RsEventDto::getId, RsEventDto::getVoteNum));
+      for (int rsEventId : rsEventIds) {
+        int index = rsEventLeaderboard.indexOf(rsEventId);
+        RsEvent rsEvent = rsEventLeaderboard.get(index).get();
+        assertEquals(voteNums.get(rsEventId).intValue(), rsEvent.getVoteNum());
+      }
+    }
+  }
+
+  /** Waits until every vote accepted with 202 has been applied or given up on by its writer. */
+  private void awaitQueuedVotes() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+    VoteIngestionStats stats = voteIngestionPipeline.getStats();
+    while (stats.getApplied() + stats.getFailed() < stats.getAccepted()) {
+      assertTrue(System.nanoTime() < deadline, "queued votes were not applied: " + stats);
+      Thread.sleep(50);
+      stats = voteIngestionPipeline.getStats();
+    }
+  }
+
+  private void assertEveryRankIsSoldOnce() {
+    List<TradeOnlyDto> tradeOnlyDtos = tradeOnlyRepository.findAll();
+    Map<Integer, Long> winnersByRank = tradeOnlyDtos.stream()
+        .collect(Collectors.groupingBy(TradeOnlyDto::getRank, Collectors.counting()));
+    winnersByRank.forEach((rank, winners) -> assertEquals(1L, winners.longValue(), "winners of rank " + rank));
+    List<TradeDto> trades = StreamSupport.stream(tradeRepository.findAll().spliterator(), false)
+        .collect(Collectors.toList());
+    for (TradeOnlyDto tradeOnlyDto : tradeOnlyDtos) {
+      assertTrue(trades.stream().anyMatch(trade -> trade.getRank() == tradeOnlyDto.getRank()
+          && trade.getAmount() == tradeOnlyDto.getAmount()
+          && trade.getRsEvent().getId() == tradeOnlyDto.getRsEvent().getId()),
+          "winner of rank " + tradeOnlyDto.getRank() + " is not a recorded bid");
+    }
+  }
+
+  private static void report(long[] latencies, int accepted, long elapsedNanos) {
+    long[] sorted = Arrays.copyOf(latencies, latencies.length);
+    Arrays.sort(sorted);
+    System.out.printf("%d requests (%d accepted) from %d threads in %d ms: %.0f req/s, "
+            + "p50 %.2f ms, p99 %.2f ms, p999 %.2f ms%n",
+        REQUESTS, accepted, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        REQUESTS * 1e9 / elapsedNanos,
+        percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999));
+  }
+
+  private static double percentile(long[] sorted, double percentile) {
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(index, 0)] / 1e6;
+  }
+
+  private void cleanUp() {
+    voteRollupRepository.deleteAll();
+    voteRepository.deleteAll();
+    tradeOnlyRepository.deleteAll();
+    tradeRepository.deleteAll();
+    rsEventRepository.deleteAll();
+    voteShardRepository.deleteAll();
+    userRepository.deleteAll();
+  }
+}
@@ -1,32 +1,49 @@
 package com.thoughtworks.rslist.api;
 
+import com.jayway.jsonpath.JsonPath;
 import com.thoughtworks.rslist.dto.RsEventDto;
 import com.thoughtworks.rslist.dto.UserDto;
 import com.thoughtworks.rslist.dto.VoteDto;
 import com.thoughtworks.rslist.repository.*;
+import com.thoughtworks.rslist.service.RsEventLeaderboard;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.util.StreamUtils;
 
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+// every /rs/list read has to see the writes made just before it
+@SpringBootTest(properties = "rs.ranking.snapshot-debounce=0ms")
 @AutoConfigureMockMvc
 class RsControllerTest {
   @Autowired private MockMvc mockMvc;
@@ -37,6 +54,8 @@ class RsControllerTest {
   TradeOnlyRepository tradeOnlyRepository;
   @Autowired
   TradeRepository tradeRepository;
+  @Autowired
+  RsEventLeaderboard rsEventLeaderboard;
   private UserDto userDto;
 
   @BeforeEach
@@ -99,6 +118,86 @@ class RsControllerTest {
         .andExpect(jsonPath("$.error", is("invalid index")));
   }
 
+  @Test
+  public void shouldGetOneEventByVoteRank() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the one event").user(save).voteNum(1).build());
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the two event").user(save).voteNum(6).build());
+
+    mockMvc.perform(get("/rs/1")).andExpect(jsonPath("$.eventName", is("the two event")));
+    mockMvc.perform(get("/rs/2")).andExpect(jsonPath("$.eventName", is("the one event")));
+    mockMvc.perform(get("/rs/3")).andExpect(status().isBadRequest());
+    mockMvc.perform(get("/rs/0")).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void shouldGetRankOfEventInRsList() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    RsEventDto first =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the one event").user(save).voteNum(5).build());
+    RsEventDto second =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the two event").user(save).voteNum(4).build());
+    RsEventDto third =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the three event").user(save).voteNum(3).build());
+    mockMvc
+        .perform(
+            post("/rs/buy/" + third.getId())
+                .content("{\"amount\":24, \"rank\":1}")
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    mockMvc
+        .perform(get("/rs/{id}/rank", third.getId()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.rsEventId", is(third.getId())))
+        .andExpect(jsonPath("$.rank", is(1)));
+    mockMvc.perform(get("/rs/{id}/rank", first.getId())).andExpect(jsonPath("$.rank", is(2)));
+    mockMvc.perform(get("/rs/{id}/rank", second.getId())).andExpect(jsonPath("$.rank", is(3)));
+    mockMvc
+        .perform(get("/rs/{id}/rank", third.getId() + 100))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error", is("invalid id")));
+  }
+
+  @Test
+  public void shouldGetEventAtTheRankItIsReportedAt() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    List<RsEventDto> rsEvents = new ArrayList<>();
+    for (int voteNum = 5; voteNum > 0; voteNum--) {
+      rsEvents.add(rsEventRepository.save(RsEventDto.builder()
+          .keyword("none").eventName("event " + voteNum).user(save).voteNum(voteNum).build()));
+    }
+    mockMvc
+        .perform(
+            post("/rs/buy/" + rsEvents.get(3).getId())
+                .content("{\"amount\":24, \"rank\":1}")
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+    mockMvc
+        .perform(
+            post("/rs/buy/" + rsEvents.get(1).getId())
+                .content("{\"amount\":10, \"rank\":9}")
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    for (RsEventDto rsEvent : rsEvents) {
+      String rank = mockMvc.perform(get("/rs/{id}/rank", rsEvent.getId()))
+          .andReturn().getResponse().getContentAsString();
+      mockMvc
+          .perform(get("/rs/{index}", JsonPath.<Integer>read(rank, "$.rank")))
+          .andExpect(status().isOk())
+          .andExpect(jsonPath("$.eventName", is(rsEvent.getEventName())));
+    }
+    mockMvc.perform(get("/rs/1")).andExpect(jsonPath("$.eventName", is("event 2")));
+    mockMvc.perform(get("/rs/5")).andExpect(jsonPath("$.eventName", is("event 4")));
+    mockMvc.perform(get("/rs/6")).andExpect(status().isBadRequest());
+  }
+
   @Test
   public void shouldGetRsListBetween() throws Exception {
     UserDto save = userRepository.save(userDto);
@@ -135,6 +234,221 @@ class RsControllerTest {
         .andExpect(jsonPath("$[2].keyword", is("无分类")));
   }
 
+  @Test
+  public void shouldGetRsListBetweenWithBoughtRankInPlace() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the one event").user(save).voteNum(5).build());
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the two event").user(save).voteNum(4).build());
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the three event").user(save).voteNum(3).build());
+    RsEventDto rsEventDtoBuy =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the four event").user(save).voteNum(2).build());
+    mockMvc
+        .perform(
+            post("/rs/buy/" + rsEventDtoBuy.getId())
+                .content("{\"amount\":24, \"rank\":2}")
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    mockMvc
+        .perform(get("/rs/list?start=2&end=3"))
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].eventName", is("the four event")))
+        .andExpect(jsonPath("$[1].eventName", is("the two event")));
+    mockMvc
+        .perform(get("/rs/list?start=3&end=4"))
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].eventName", is("the two event")))
+        .andExpect(jsonPath("$[1].eventName", is("the three event")));
+    mockMvc
+        .perform(get("/rs/list?start=4&end=10"))
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].eventName", is("the three event")));
+  }
+
+  @Test
+  public void shouldMoveBoughtRankUpWhenItIsBehindTheLastEvent() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the one event").user(save).voteNum(5).build());
+    RsEventDto rsEventDtoBuy =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the two event").user(save).voteNum(4).build());
+    mockMvc
+        .perform(
+            post("/rs/buy/" + rsEventDtoBuy.getId())
+                .content("{\"amount\":24, \"rank\":5}")
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    mockMvc
+        .perform(get("/rs/list?start=2&end=5"))
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].eventName", is("the two event")));
+  }
+
+  @Test
+  public void shouldKeepEventBoughtBehindThePageOutOfThePage() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    RsEventDto rsEventDtoBuy =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the one event").user(save).voteNum(5).build());
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the two event").user(save).voteNum(4).build());
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the three event").user(save).voteNum(3).build());
+    mockMvc
+        .perform(
+            post("/rs/buy/" + rsEventDtoBuy.getId())
+                .content("{\"amount\":24, \"rank\":3}")
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    mockMvc
+        .perform(get("/rs/list?start=1&end=2"))
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].eventName", is("the two event")))
+        .andExpect(jsonPath("$[1].eventName", is("the three event")));
+  }
+
+  @Test
+  public void shouldGetErrorWhenTrendingWindowIsTooLong() throws Exception {
+    mockMvc
+        .perform(get("/rs/trending").param("window", "120"))
+        .andExpect(jsonPath("$.error", is("invalid window")))
+        .andExpect(status().isBadRequest());
+    mockMvc
+        .perform(get("/rs/trending").param("window", "60"))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  public void shouldAnswerNotModifiedUntilRankingChanges() throws Exception {
+    assumeTrue(rsEventLeaderboard.isEnabled());
+    UserDto save = userRepository.save(userDto);
+    RsEventDto rsEventDto =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the one event").user(save).build());
+    String eTag = mockMvc.perform(get("/rs/list"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getHeader("ETag");
+    assertNotNull(eTag);
+
+    mockMvc
+        .perform(get("/rs/list").header("If-None-Match", eTag))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+
+    mockMvc.perform(
+        post("/rs/vote/{id}", rsEventDto.getId())
+            .content(String.format("{\"userId\":%d,\"time\":\"%s\",\"voteNum\":1}",
+                save.getId(), LocalDateTime.now()))
+            .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+    String changedETag = mockMvc
+        .perform(get("/rs/list").header("If-None-Match", eTag))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].voteNum", is(1)))
+        .andReturn().getResponse().getHeader("ETag");
+    assertNotEquals(eTag, changedETag);
+  }
+
+  @Test
+  public void shouldServeGzippedRankingWhenAccepted() throws Exception {
+    assumeTrue(rsEventLeaderboard.isEnabled());
+    UserDto save = userRepository.save(userDto);
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the one event").user(save).voteNum(2).build());
+    MockHttpServletResponse identity = mockMvc.perform(get("/rs/list"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist("Content-Encoding"))
+        .andReturn().getResponse();
+    byte[] json = identity.getContentAsByteArray();
+
+    MockHttpServletResponse gzipped = mockMvc.perform(get("/rs/list").header("Accept-Encoding", "gzip, deflate"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Encoding", "gzip"))
+        .andExpect(header().string("Vary", "Accept-Encoding"))
+        .andReturn().getResponse();
+    byte[] gzip = gzipped.getContentAsByteArray();
+    assertNotEquals(identity.getHeader("ETag"), gzipped.getHeader("ETag"));
+
+    mockMvc.perform(get("/rs/list").header("Accept-Encoding", "gzip").header("If-None-Match", identity.getHeader("ETag")))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Encoding", "gzip"));
+    mockMvc.perform(get("/rs/list").header("Accept-Encoding", "gzip").header("If-None-Match", gzipped.getHeader("ETag")))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("Vary", "Accept-Encoding"));
+
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+      assertArrayEquals(json, StreamUtils.copyToByteArray(in));
+    }
+  }
+
+  @Test
+  public void shouldNotGzipRankingWhenGzipIsRefused() throws Exception {
+    assumeTrue(rsEventLeaderboard.isEnabled());
+    UserDto save = userRepository.save(userDto);
+    rsEventRepository.save(
+        RsEventDto.builder().keyword("none").eventName("the one event").user(save).voteNum(2).build());
+
+    mockMvc.perform(get("/rs/list").header("Accept-Encoding", "gzip;q=0, deflate"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist("Content-Encoding"));
+    mockMvc.perform(get("/rs/list").header("Accept-Encoding", "*;q=0.5, gzip;q=0"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist("Content-Encoding"));
+    mockMvc.perform(get("/rs/list").header("Accept-Encoding", "deflate, *;q=0.1"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Encoding", "gzip"));
+  }
+
+  @Test
+  public void shouldRejectInvalidWindowEvenWhenRankingIsUnchanged() throws Exception {
+    assumeTrue(rsEventLeaderboard.isEnabled());
+    String eTag = mockMvc.perform(get("/rs/list"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getHeader("ETag");
+
+    mockMvc.perform(get("/rs/list?start=3&end=1").header("If-None-Match", eTag))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error", is("invalid index")));
+  }
+
+  @Test
+  public void shouldStreamRankingAsServerSentEvents() throws Exception {
+    assumeTrue(rsEventLeaderboard.isEnabled());
+    UserDto save = userRepository.save(userDto);
+    RsEventDto rsEventDto =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("none").eventName("the one event").user(save).build());
+
+    MvcResult result = mockMvc
+        .perform(get("/rs/list/stream").accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    assertEquals(Duration.ofMinutes(30).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+    String body = result.getResponse().getContentAsString();
+    assertTrue(body.startsWith("event:ranking\n"));
+    assertTrue(body.contains("\"rsEventId\":" + rsEventDto.getId() + ",\"rank\":1"));
+  }
+
+  @Test
+  public void shouldGetErrorWhenRsListRangeInvalid() throws Exception {
+    mockMvc
+        .perform(get("/rs/list?start=3&end=2"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error", is("invalid index")));
+    mockMvc
+        .perform(get("/rs/list?start=0&end=2"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error", is("invalid index")));
+  }
+
   @Test
   public void shouldAddRsEventWhenUserExist() throws Exception {
 
@@ -190,6 +504,98 @@ class RsControllerTest {
     assertEquals(voteDtos.get(0).getNum(), 1);
   }
 
+  @Test
+  public void shouldRecordVoteOfZeroWithoutMovingAnyVotes() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    RsEventDto rsEventDto =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("无分类").eventName("第一条事件").user(save).build());
+    String jsonValue =
+        String.format(
+            "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":0}",
+            save.getId(), LocalDateTime.now().toString());
+
+    mockMvc
+        .perform(
+            post("/rs/vote/{id}", rsEventDto.getId())
+                .content(jsonValue)
+                .contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk());
+
+    assertEquals(userRepository.findById(save.getId()).get().getVoteNum(), 10);
+    assertEquals(rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum(), 0);
+    assertEquals(voteRepository.findAll().size(), 1);
+  }
+
+  @Test
+  public void shouldNotVoteWhenUserHasNotEnoughVotes() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    RsEventDto rsEventDto =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("无分类").eventName("第一条事件").user(save).build());
+    String jsonValue =
+        String.format(
+            "{\"userId\":%d,\"time\":\"%s\",\"voteNum\":11}",
+            save.getId(), LocalDateTime.now().toString());
+
+    try {
+      mockMvc.perform(
+          post("/rs/vote/{id}", rsEventDto.getId())
+              .content(jsonValue)
+              .contentType(MediaType.APPLICATION_JSON));
+    } catch (Exception ignored) {
+      // the vote is refused by an unhandled RuntimeException
+    }
+
+    assertEquals(userRepository.findById(save.getId()).get().getVoteNum(), 10);
+    assertEquals(rsEventRepository.findById(rsEventDto.getId()).get().getVoteNum(), 0);
+    assertEquals(voteRepository.findAll().size(), 0);
+  }
+
+  @Test
+  public void shouldVoteInBatch() throws Exception {
+    UserDto save = userRepository.save(userDto);
+    RsEventDto first =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("无分类").eventName("第一条事件").user(save).build());
+    RsEventDto second =
+        rsEventRepository.save(
+            RsEventDto.builder().keyword("无分类").eventName("第二条事件").user(save).build());
+    String time = LocalDateTime.now().toString();
+    String jsonValue =
+        String.format(
+            "[{\"userId\":%1$d,\"rsEventId\":%2$d,\"time\":\"%4$s\",\"voteNum\":3},"
+                + "{\"userId\":%1$d,\"rsEventId\":%3$d,\"time\":\"%4$s\",\"voteNum\":5},"
+                + "{\"userId\":%1$d,\"rsEventId\":%3$d,\"time\":\"%4$s\",\"voteNum\":5}]",
+            save.getId(), first.getId(), second.getId(), time);
+
+    mockMvc
+        .perform(post("/rs/votes").content(jsonValue).contentType(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$", hasSize(3)))
+        .andExpect(jsonPath("$[0].success", is(true)))
+        .andExpect(jsonPath("$[1].success", is(true)))
+        .andExpect(jsonPath("$[2].success", is(false)))
+        .andExpect(jsonPath("$[2].error", is("vote num is not enough")))
+        .andExpect(status().isOk());
+
+    assertEquals(userRepository.findById(save.getId()).get().getVoteNum(), 2);
+    assertEquals(rsEventRepository.findById(first.getId()).get().getVoteNum(), 3);
+    assertEquals(rsEventRepository.findById(second.getId()).get().getVoteNum(), 5);
+    assertEquals(voteRepository.findAll().size(), 2);
+    mockMvc
+        .perform(get("/rs/list"))
+        .andExpect(jsonPath("$[0].eventName", is("第二条事件")))
+        .andExpect(jsonPath("$[0].voteNum", is(5)));
+  }
+
+  @Test
+  public void shouldGetErrorWhenVoteBatchIsEmpty() throws Exception {
+    mockMvc
+        .perform(post("/rs/votes").content("[]").contentType(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.error", is("invalid votes")))
+        .andExpect(status().isBadRequest());
+  }
+
   @Test
   public void shouldBuyRsEventSuccess() throws Exception {
     UserDto save = userRepository.save(userDto);
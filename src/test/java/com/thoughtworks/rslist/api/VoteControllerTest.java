@@ -6,6 +6,8 @@ import com.thoughtworks.rslist.dto.VoteDto;
 import com.thoughtworks.rslist.repository.RsEventRepository;
 import com.thoughtworks.rslist.repository.UserRepository;
 import com.thoughtworks.rslist.repository.VoteRepository;
+import com.thoughtworks.rslist.repository.VoteRollupRepository;
+import com.thoughtworks.rslist.service.VoteArchiver;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,13 +15,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.LocalDateTime;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -31,6 +38,10 @@ class VoteControllerTest {
     RsEventRepository rsEventRepository;
     @Autowired
     VoteRepository voteRepository;
+    @Autowired
+    VoteRollupRepository voteRollupRepository;
+    @Autowired
+    VoteArchiver voteArchiver;
     UserDto userDto;
     RsEventDto rsEventDto;
 
@@ -49,6 +60,7 @@ class VoteControllerTest {
 
     @AfterEach
     void tearDown() {
+        voteRollupRepository.deleteAll();
         voteRepository.deleteAll();
         rsEventRepository.deleteAll();
         userRepository.deleteAll();
@@ -107,4 +119,70 @@ class VoteControllerTest {
 
 
     }
+
+    @Test
+    public void shouldGetVoteRecordByCursor() throws Exception {
+      for (int num = 1; num <= 4; num++) {
+        voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).localDateTime(LocalDateTime.now())
+                .num(num).build());
+      }
+
+      MvcResult firstPage = mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+              .param("rsEventId", String.valueOf(rsEventDto.getId())).param("pageSize", "3"))
+              .andExpect(jsonPath("$", hasSize(3)))
+              .andExpect(jsonPath("$[0].voteNum", is(5)))
+              .andExpect(jsonPath("$[2].voteNum", is(2)))
+              .andReturn();
+      String cursor = firstPage.getResponse().getHeader("X-Next-Cursor");
+      assertNotNull(cursor);
+
+      mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+              .param("rsEventId", String.valueOf(rsEventDto.getId())).param("pageSize", "3")
+              .param("cursor", cursor))
+              .andExpect(jsonPath("$", hasSize(2)))
+              .andExpect(jsonPath("$[0].voteNum", is(3)))
+              .andExpect(jsonPath("$[1].voteNum", is(4)))
+              .andExpect(header().doesNotExist("X-Next-Cursor"));
+    }
+
+    @Test
+    public void shouldGetErrorWhenPageSizeIsInvalid() throws Exception {
+      mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+              .param("rsEventId", String.valueOf(rsEventDto.getId())).param("pageSize", "0"))
+              .andExpect(jsonPath("$.error", is("invalid page size")))
+              .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldGetRolledUpVotesBeforeLiveVotes() throws Exception {
+      LocalDateTime lastMonth = LocalDateTime.now().minusDays(40);
+      voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).localDateTime(lastMonth)
+              .num(1).build());
+      voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).localDateTime(lastMonth.plusMinutes(1))
+              .num(2).build());
+      voteRepository.save(VoteDto.builder().user(userDto).rsEvent(rsEventDto).localDateTime(lastMonth.plusDays(1))
+              .num(3).build());
+
+      assertEquals(3, voteArchiver.archiveBefore(LocalDateTime.now().minusDays(30)));
+      assertEquals(1, voteRepository.findAll().size());
+      assertEquals(2, voteRollupRepository.findAll().size());
+
+      mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+              .param("rsEventId", String.valueOf(rsEventDto.getId())).param("pageIndex", "1"))
+              .andExpect(jsonPath("$", hasSize(3)))
+              .andExpect(jsonPath("$[0].voteNum", is(3)))
+              .andExpect(jsonPath("$[1].voteNum", is(3)))
+              .andExpect(jsonPath("$[2].voteNum", is(5)));
+
+      MvcResult firstPage = mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+              .param("rsEventId", String.valueOf(rsEventDto.getId())).param("pageSize", "2"))
+              .andExpect(jsonPath("$", hasSize(2)))
+              .andExpect(jsonPath("$[1].voteNum", is(3)))
+              .andReturn();
+      mockMvc.perform(get("/voteRecord").param("userId", String.valueOf(userDto.getId()))
+              .param("rsEventId", String.valueOf(rsEventDto.getId())).param("pageSize", "2")
+              .param("cursor", firstPage.getResponse().getHeader("X-Next-Cursor")))
+              .andExpect(jsonPath("$", hasSize(1)))
+              .andExpect(jsonPath("$[0].voteNum", is(5)));
+    }
 }
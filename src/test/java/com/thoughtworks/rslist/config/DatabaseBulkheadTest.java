@@ -0,0 +1,93 @@
+package com.thoughtworks.rslist.config;
+
+import com.thoughtworks.rslist.exception.DatabaseBusyException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DatabaseBulkheadTest {
+  DatabaseBulkhead databaseBulkhead = new DatabaseBulkhead(true, 1, TimeUnit.MILLISECONDS.toNanos(50));
+
+  @BeforeEach
+  void setUp() {
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void shouldLetNestedCallsThroughOnOnePermit() throws Throwable {
+    ProceedingJoinPoint inner = mock(ProceedingJoinPoint.class);
+    when(inner.proceed()).thenReturn("done");
+    ProceedingJoinPoint outer = mock(ProceedingJoinPoint.class);
+    when(outer.proceed()).thenAnswer(invocation -> databaseBulkhead.guard(inner));
+
+    assertEquals("done", databaseBulkhead.guard(outer));
+    assertEquals(0, databaseBulkhead.getPools().get(0).getInUse());
+  }
+
+  @Test
+  void shouldRejectRequestWhenAllPermitsAreTaken() throws Throwable {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ProceedingJoinPoint slow = mock(ProceedingJoinPoint.class);
+    when(slow.proceed()).thenAnswer(invocation -> {
+      entered.countDown();
+      return release.await(5, TimeUnit.SECONDS);
+    });
+    Thread holder = new Thread(() -> {
+      try {
+        databaseBulkhead.guard(slow);
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    holder.start();
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+    assertThrows(DatabaseBusyException.class, () -> databaseBulkhead.guard(mock(ProceedingJoinPoint.class)));
+    assertEquals(1, databaseBulkhead.getRejected());
+
+    release.countDown();
+    holder.join();
+    assertEquals(0, databaseBulkhead.getPools().get(0).getInUse());
+  }
+
+  @Test
+  void shouldCountReplicaReadsAgainstTheReplicaPool() throws Throwable {
+    ReadWriteRoutingDataSource routing =
+        new ReadWriteRoutingDataSource(mock(DataSource.class), mock(DataSource.class), Duration.ofSeconds(10));
+    DatabaseBulkhead routedBulkhead = new DatabaseBulkhead(true, 1, routing, 1, TimeUnit.MILLISECONDS.toNanos(50));
+    List<DatabaseBulkhead.Pool> pools = routedBulkhead.getPools();
+    ProceedingJoinPoint read = mock(ProceedingJoinPoint.class);
+    when(read.proceed()).thenAnswer(invocation -> pools.get(0).getInUse() + "/" + pools.get(1).getInUse());
+
+    assertEquals("1/0", routedBulkhead.guard(read));
+    assertEquals("0/1", ReadWriteRoutingDataSource.onReplica(() -> {
+      try {
+        return routedBulkhead.guard(read);
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }));
+  }
+}
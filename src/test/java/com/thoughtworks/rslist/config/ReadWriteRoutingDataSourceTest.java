@@ -0,0 +1,107 @@
+package com.thoughtworks.rslist.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadWriteRoutingDataSourceTest {
+  HikariDataSource primary = h2("jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1");
+  HikariDataSource replica = h2("jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1");
+
+  @BeforeEach
+  void setUp() {
+    mark(primary, "primary");
+    mark(replica, "replica");
+  }
+
+  @AfterEach
+  void tearDown() {
+    new JdbcTemplate(primary).execute("drop table marker");
+    primary.close();
+    if (!replica.isClosed()) {
+      new JdbcTemplate(replica).execute("drop table marker");
+      replica.close();
+    }
+  }
+
+  @Test
+  void shouldReadFromReplicaOnlyInReadOnlyTransactionsRunOnReplica() {
+    ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, Duration.ofSeconds(10));
+    DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+
+    assertEquals("replica", ReadWriteRoutingDataSource.onReplica(() -> read(dataSource, true)));
+    assertEquals("primary", ReadWriteRoutingDataSource.onReplica(() -> read(dataSource, false)));
+    assertEquals("primary", read(dataSource, true));
+    assertEquals("primary", new JdbcTemplate(dataSource).queryForObject("select name from marker", String.class));
+    assertTrue(routing.isReplicaAvailable());
+  }
+
+  @Test
+  void shouldReadFromPrimaryWhenPinnedWithinOnReplica() {
+    DataSource dataSource =
+        new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primary, replica, Duration.ofSeconds(10)));
+
+    assertEquals("primary", ReadWriteRoutingDataSource.onReplica(() ->
+        ReadWriteRoutingDataSource.onPrimary(() -> read(dataSource, true))));
+    assertEquals("replica", ReadWriteRoutingDataSource.onReplica(() -> {
+      ReadWriteRoutingDataSource.onPrimary(() -> read(dataSource, true));
+      return read(dataSource, true);
+    }));
+  }
+
+  @Test
+  void shouldFallBackToPrimaryWhenReplicaIsUnavailable() {
+    ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, Duration.ofSeconds(10));
+    DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+    new JdbcTemplate(replica).execute("drop table marker");
+    replica.close();
+
+    assertEquals("primary", ReadWriteRoutingDataSource.onReplica(() -> read(dataSource, true)));
+    assertFalse(routing.isReplicaAvailable());
+    assertEquals("primary", ReadWriteRoutingDataSource.onReplica(() -> read(dataSource, true)));
+  }
+
+  @Test
+  void shouldRetryReplicaAfterItWasMarkedDown() {
+    HikariDataSource down = h2("jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1");
+    down.close();
+    ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, down, Duration.ZERO);
+    DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+
+    assertEquals("primary", ReadWriteRoutingDataSource.onReplica(() -> read(dataSource, true)));
+    assertTrue(routing.isReplicaAvailable());
+  }
+
+  private static String read(DataSource dataSource, boolean readOnly) {
+    TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    transactionTemplate.setReadOnly(readOnly);
+    return transactionTemplate.execute(status ->
+        new JdbcTemplate(dataSource).queryForObject("select name from marker", String.class));
+  }
+
+  private static void mark(DataSource dataSource, String name) {
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("create table marker (name varchar(16))");
+    jdbcTemplate.update("insert into marker values (?)", name);
+  }
+
+  private static HikariDataSource h2(String url) {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(url);
+    dataSource.setUsername("sa");
+    dataSource.setConnectionTimeout(250);
+    return dataSource;
+  }
+}
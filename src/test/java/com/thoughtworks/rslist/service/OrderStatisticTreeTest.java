@@ -0,0 +1,62 @@
+package com.thoughtworks.rslist.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderStatisticTreeTest {
+  OrderStatisticTree<Integer> tree = new OrderStatisticTree<>(Comparator.reverseOrder());
+
+  @Test
+  void shouldAnswerPositionQueriesInSortedOrder() {
+    tree.add(3);
+    tree.add(7);
+    tree.add(5);
+
+    assertEquals(7, tree.get(0));
+    assertEquals(5, tree.get(1));
+    assertEquals(3, tree.get(2));
+    assertEquals(1, tree.indexOf(5));
+    assertEquals(-1, tree.indexOf(4));
+    assertThrows(IndexOutOfBoundsException.class, () -> tree.get(3));
+  }
+
+  @Test
+  void shouldIgnoreDuplicatesAndMissingRemovals() {
+    assertTrue(tree.add(1));
+    assertFalse(tree.add(1));
+    assertFalse(tree.remove(2));
+    assertTrue(tree.remove(1));
+    assertEquals(0, tree.size());
+  }
+
+  @Test
+  void shouldMatchTreeSetUnderRandomUpdates() {
+    TreeSet<Integer> expected = new TreeSet<>(Comparator.reverseOrder());
+    Random random = new Random(42);
+    for (int step = 0; step < 20000; step++) {
+      int value = random.nextInt(2000);
+      if (random.nextBoolean()) {
+        assertEquals(expected.add(value), tree.add(value));
+      } else {
+        assertEquals(expected.remove(value), tree.remove(value));
+      }
+    }
+
+    List<Integer> sorted = new ArrayList<>(expected);
+    assertEquals(sorted, new ArrayList<>(tree));
+    for (int index = 0; index < sorted.size(); index++) {
+      assertEquals(sorted.get(index), tree.get(index));
+      assertEquals(index, tree.indexOf(sorted.get(index)));
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.TradeOnlyDto;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class RankAuctionBookTest {
+  RankAuctionBook rankAuctionBook;
+  RsListProperties properties;
+
+  @Mock TradeOnlyRepository tradeOnlyRepository;
+  @Mock PlatformTransactionManager transactionManager;
+
+  @BeforeEach
+  void setUp() {
+    initMocks(this);
+    properties = new RsListProperties();
+    rankAuctionBook = new RankAuctionBook(tradeOnlyRepository, new TransactionTemplate(transactionManager), properties);
+  }
+
+  @Test
+  void shouldSettleBidAgainstTheLockedTradeOnlyRow() {
+    TradeOnlyDto tradeOnlyDto = trade(1, 3, 10);
+    when(tradeOnlyRepository.findByRank(1)).thenReturn(Optional.of(tradeOnlyDto));
+    List<TradeOnlyDto> persisted = new ArrayList<>();
+
+    assertFalse(rankAuctionBook.bid(1, 10, persisted::add));
+    assertTrue(rankAuctionBook.bid(1, 11, persisted::add));
+
+    assertEquals(1, persisted.size());
+    assertEquals(tradeOnlyDto, persisted.get(0));
+  }
+
+  @Test
+  void shouldHandNewRowToPersistWhenRankWasNotBoughtYet() {
+    List<TradeOnlyDto> persisted = new ArrayList<>();
+
+    assertTrue(rankAuctionBook.bid(2, 5, persisted::add));
+
+    assertEquals(2, persisted.get(0).getRank());
+  }
+
+  @Test
+  void shouldRejectBidThatCannotBeatCommittedTradeWithoutTheDatabase() {
+    rankAuctionBook.onSaved(1, 3, 10);
+
+    assertFalse(rankAuctionBook.bid(1, 10, tradeOnlyDto -> { }));
+
+    verify(tradeOnlyRepository, never()).findByRank(anyInt());
+  }
+
+  @Test
+  void shouldAlwaysAskTheDatabaseWithoutInMemoryRanking() {
+    properties.getRanking().setInMemory(false);
+    rankAuctionBook = new RankAuctionBook(tradeOnlyRepository, new TransactionTemplate(transactionManager), properties);
+    rankAuctionBook.onSaved(1, 3, 10);
+
+    assertTrue(rankAuctionBook.bid(1, 5, tradeOnlyDto -> { }));
+
+    assertNull(rankAuctionBook.getHighest(1));
+    verify(tradeOnlyRepository).findByRank(1);
+  }
+
+  @Test
+  void shouldForgetRankWhenItsTradeIsRemoved() {
+    rankAuctionBook.onSaved(1, 3, 10);
+
+    rankAuctionBook.onRemoved(1, 3, 10);
+
+    assertTrue(rankAuctionBook.bid(1, 1, tradeOnlyDto -> { }));
+  }
+
+  @Test
+  void shouldSettleAgainWhenAConcurrentFirstBidTookTheRank() {
+    when(tradeOnlyRepository.findByRank(1))
+        .thenReturn(Optional.empty())
+        .thenReturn(Optional.of(trade(1, 3, 20)));
+
+    assertFalse(rankAuctionBook.bid(1, 15, tradeOnlyDto -> {
+      throw new DataIntegrityViolationException("duplicate rank");
+    }));
+
+    verify(tradeOnlyRepository, times(2)).findByRank(1);
+    assertEquals(20, rankAuctionBook.getHighest(1).getAmount());
+  }
+
+  private TradeOnlyDto trade(int rank, int rsEventId, int amount) {
+    return TradeOnlyDto.builder().rank(rank).amount(amount).rsEvent(RsEventDto.builder().id(rsEventId).build()).build();
+  }
+}
@@ -0,0 +1,209 @@
+package com.thoughtworks.rslist.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.domain.RankingChange;
+import com.thoughtworks.rslist.domain.RankingDiff;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RankingChangeBroadcasterTest {
+  RankingSnapshot before =
+      RankingSnapshot.merge(
+          1,
+          Arrays.asList(
+              new RsEventLeaderboard.Entry(1, "first", "keyword", 5),
+              new RsEventLeaderboard.Entry(2, "second", "keyword", 4),
+              new RsEventLeaderboard.Entry(3, "third", "keyword", 3)),
+          Collections.emptyList());
+
+  @Test
+  void shouldSendWholeRankingWhenNothingWasPublished() {
+    RankingDiff diff = RankingChangeBroadcaster.diff(null, before);
+
+    assertEquals(1, diff.getVersion());
+    assertEquals(Arrays.asList(1, 2, 3), ids(diff.getChanges()));
+    assertEquals(0, diff.getChanges().get(0).getPreviousRank());
+    assertEquals(5, diff.getChanges().get(0).getVoteNum());
+  }
+
+  @Test
+  void shouldOnlySendMovedAndRecountedEvents() {
+    RankingSnapshot after =
+        RankingSnapshot.merge(
+            2,
+            Arrays.asList(
+                new RsEventLeaderboard.Entry(2, "second", "keyword", 6),
+                new RsEventLeaderboard.Entry(1, "first", "keyword", 5),
+                new RsEventLeaderboard.Entry(3, "third", "keyword", 3)),
+            Collections.emptyList());
+
+    List<RankingChange> changes = RankingChangeBroadcaster.diff(before, after).getChanges();
+
+    assertEquals(Arrays.asList(2, 1), ids(changes));
+    assertEquals(1, changes.get(0).getRank());
+    assertEquals(2, changes.get(0).getPreviousRank());
+    assertEquals(6, changes.get(0).getVoteNum());
+    assertEquals(2, changes.get(1).getRank());
+    assertEquals(1, changes.get(1).getPreviousRank());
+  }
+
+  @Test
+  void shouldSendRemovedEventsWithoutRank() {
+    RankingSnapshot after =
+        RankingSnapshot.merge(
+            2,
+            Arrays.asList(
+                new RsEventLeaderboard.Entry(1, "first", "keyword", 5),
+                new RsEventLeaderboard.Entry(2, "second", "keyword", 4)),
+            Collections.emptyList());
+
+    List<RankingChange> changes = RankingChangeBroadcaster.diff(before, after).getChanges();
+
+    assertEquals(Collections.singletonList(3), ids(changes));
+    assertEquals(0, changes.get(0).getRank());
+    assertEquals(3, changes.get(0).getPreviousRank());
+  }
+
+  @Test
+  void shouldSendNothingWhenRankingIsUnchanged() {
+    RankingSnapshot after =
+        RankingSnapshot.merge(
+            2,
+            Arrays.asList(
+                new RsEventLeaderboard.Entry(1, "first", "keyword", 5),
+                new RsEventLeaderboard.Entry(2, "second", "keyword", 4),
+                new RsEventLeaderboard.Entry(3, "third", "keyword", 3)),
+            Collections.emptyList());
+
+    assertEquals(Collections.emptyList(), RankingChangeBroadcaster.diff(before, after).getChanges());
+  }
+
+  @Test
+  void shouldDropSubscriberThatFallsBehindWithoutHoldingUpTheOthers() throws Exception {
+    RankingSnapshotPublisher rankingSnapshotPublisher = mock(RankingSnapshotPublisher.class);
+    when(rankingSnapshotPublisher.isEnabled()).thenReturn(true);
+    when(rankingSnapshotPublisher.get()).thenReturn(before);
+    RsListProperties properties = new RsListProperties();
+    properties.getRanking().setPushInterval(Duration.ofMinutes(1));
+    RankingChangeBroadcaster broadcaster =
+        new RankingChangeBroadcaster(rankingSnapshotPublisher, new RankingVersion(), new ObjectMapper(), properties);
+    broadcaster.start();
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    CountDownLatch stuck = new CountDownLatch(1);
+    broadcaster.subscribe(new SseEmitter() {
+      @Override
+      public void send(SseEventBuilder builder) {
+        received.add(json(builder));
+      }
+    });
+    broadcaster.subscribe(new SseEmitter() {
+      private boolean first = true;
+
+      @Override
+      public void send(SseEventBuilder builder) {
+        if (!first) {
+          await(stuck);
+        }
+        first = false;
+      }
+    });
+
+    assertTrue(received.poll(5, TimeUnit.SECONDS).contains("\"version\":1,"));
+    int publishes = RankingChangeBroadcaster.MAX_PENDING_MESSAGES + 2;
+    for (int version = 2; version < 2 + publishes; version++) {
+      when(rankingSnapshotPublisher.get()).thenReturn(RankingSnapshot.merge(version,
+          Collections.singletonList(new RsEventLeaderboard.Entry(1, "first", "keyword", version)),
+          Collections.emptyList()));
+      broadcaster.publish();
+      assertTrue(received.poll(5, TimeUnit.SECONDS).contains("\"version\":" + version + ","));
+    }
+
+    assertEquals(1, broadcaster.getSubscriberCount());
+    stuck.countDown();
+    broadcaster.stop();
+  }
+
+  @Test
+  void shouldKeepSenderThreadsBoundedWhileSubscribersAreStalled() throws Exception {
+    RankingSnapshotPublisher rankingSnapshotPublisher = mock(RankingSnapshotPublisher.class);
+    when(rankingSnapshotPublisher.isEnabled()).thenReturn(true);
+    when(rankingSnapshotPublisher.get()).thenReturn(before);
+    RsListProperties properties = new RsListProperties();
+    properties.getRanking().setPushInterval(Duration.ofMinutes(1));
+    RankingChangeBroadcaster broadcaster =
+        new RankingChangeBroadcaster(rankingSnapshotPublisher, new RankingVersion(), new ObjectMapper(), properties);
+    broadcaster.start();
+    long sendersBefore = senderThreadCount();
+    CountDownLatch stuck = new CountDownLatch(1);
+    int stalled = RankingChangeBroadcaster.SENDER_THREADS * 10;
+    for (int subscriber = 0; subscriber < stalled; subscriber++) {
+      broadcaster.subscribe(new SseEmitter() {
+        private boolean first = true;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+          if (!first) {
+            await(stuck);
+          }
+          first = false;
+        }
+      });
+    }
+
+    for (int version = 2; version < 4 + RankingChangeBroadcaster.MAX_PENDING_MESSAGES; version++) {
+      when(rankingSnapshotPublisher.get()).thenReturn(RankingSnapshot.merge(version,
+          Collections.singletonList(new RsEventLeaderboard.Entry(1, "first", "keyword", version)),
+          Collections.emptyList()));
+      broadcaster.publish();
+    }
+
+    assertEquals(0, broadcaster.getSubscriberCount());
+    assertTrue(senderThreadCount() - sendersBefore <= RankingChangeBroadcaster.SENDER_THREADS);
+    stuck.countDown();
+    broadcaster.stop();
+  }
+
+  private static long senderThreadCount() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().startsWith("ranking-sender-"))
+        .count();
+  }
+
+  private static String json(SseEmitter.SseEventBuilder builder) {
+    return builder.build().stream()
+        .map(ResponseBodyEmitter.DataWithMediaType::getData)
+        .filter(data -> data instanceof String && ((String) data).startsWith("{"))
+        .map(String.class::cast)
+        .findFirst()
+        .orElse("");
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static List<Integer> ids(List<RankingChange> changes) {
+    return changes.stream().map(RankingChange::getRsEventId).collect(Collectors.toList());
+  }
+}
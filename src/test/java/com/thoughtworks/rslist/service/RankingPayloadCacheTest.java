@@ -0,0 +1,76 @@
+package com.thoughtworks.rslist.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class RankingPayloadCacheTest {
+  RankingPayloadCache rankingPayloadCache;
+  ObjectMapper objectMapper = new ObjectMapper();
+  @Mock RankingSnapshotPublisher rankingSnapshotPublisher;
+
+  @BeforeEach
+  void setUp() {
+    initMocks(this);
+    rankingPayloadCache = new RankingPayloadCache(rankingSnapshotPublisher, new RankingVersion(), objectMapper);
+  }
+
+  @Test
+  void shouldServeSameBytesUntilRankingChanges() throws IOException {
+    RankingSnapshot first = snapshot(1, 5);
+    when(rankingSnapshotPublisher.get()).thenReturn(first);
+
+    RankingPayload payload = rankingPayloadCache.get(null, null);
+
+    assertArrayEquals(objectMapper.writeValueAsBytes(first.getRsEvents()), payload.getJson());
+    assertArrayEquals(payload.getJson(), gunzip(payload.getGzip()));
+    assertSame(payload, rankingPayloadCache.get(null, null));
+
+    when(rankingSnapshotPublisher.get()).thenReturn(snapshot(2, 6));
+    RankingPayload changed = rankingPayloadCache.get(null, null);
+
+    assertNotSame(payload, changed);
+    assertSame(changed, rankingPayloadCache.get(null, null));
+  }
+
+  @Test
+  void shouldCacheEachWindowSeparately() throws IOException {
+    RankingSnapshot snapshot = snapshot(1, 5);
+    when(rankingSnapshotPublisher.get()).thenReturn(snapshot);
+
+    RankingPayload window = rankingPayloadCache.get(1, 1);
+
+    assertArrayEquals(objectMapper.writeValueAsBytes(snapshot.getRsEvents(1, 1)), window.getJson());
+    assertSame(window, rankingPayloadCache.get(1, 1));
+    assertNotSame(window, rankingPayloadCache.get(1, 2));
+  }
+
+  private static RankingSnapshot snapshot(long version, int firstVoteNum) {
+    return RankingSnapshot.merge(
+        version,
+        Arrays.asList(
+            new RsEventLeaderboard.Entry(1, "first", "keyword", firstVoteNum),
+            new RsEventLeaderboard.Entry(2, "second", "keyword", 4)),
+        Collections.emptyList());
+  }
+
+  private static byte[] gunzip(byte[] gzip) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+      return StreamUtils.copyToByteArray(in);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.repository.TradeOnlyRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class RankingSnapshotPublisherTest {
+  RankingVersion rankingVersion = new RankingVersion();
+  RankingSnapshotPublisher rankingSnapshotPublisher;
+
+  @Mock RsEventLeaderboard rsEventLeaderboard;
+  @Mock TradeOnlyRepository tradeOnlyRepository;
+
+  @BeforeEach
+  void setUp() {
+    initMocks(this);
+    when(rsEventLeaderboard.isEnabled()).thenReturn(true);
+    when(rsEventLeaderboard.getEntries()).thenReturn(Collections.emptyList());
+    RsListProperties properties = new RsListProperties();
+    properties.getRanking().setSnapshotDebounce(Duration.ofMillis(50));
+    rankingSnapshotPublisher =
+        new RankingSnapshotPublisher(rsEventLeaderboard, tradeOnlyRepository, rankingVersion, properties);
+    rankingSnapshotPublisher.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    rankingSnapshotPublisher.stop();
+  }
+
+  @Test
+  void shouldRebuildOnceInTheBackgroundAfterBurstOfChanges() throws InterruptedException {
+    RankingSnapshot first = rankingSnapshotPublisher.get();
+
+    rankingVersion.bump();
+    rankingVersion.bump();
+    rankingVersion.bump();
+    assertSame(first, rankingSnapshotPublisher.get());
+
+    Thread.sleep(500);
+    assertEquals(3, rankingSnapshotPublisher.get().getVersion());
+    verify(rsEventLeaderboard, times(2)).getEntries();
+  }
+
+  @Test
+  void shouldCachePaidSlotsOnlyWithInMemoryRanking() {
+    when(tradeOnlyRepository.findAllWithRsEvent()).thenReturn(Collections.emptyList());
+    rankingSnapshotPublisher.getPaidSlots();
+    rankingSnapshotPublisher.getPaidSlots();
+    verify(tradeOnlyRepository, times(1)).findAllWithRsEvent();
+
+    when(rsEventLeaderboard.isEnabled()).thenReturn(false);
+    rankingSnapshotPublisher.getPaidSlots();
+    rankingSnapshotPublisher.getPaidSlots();
+    verify(tradeOnlyRepository, times(3)).findAllWithRsEvent();
+  }
+}
@@ -0,0 +1,52 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.domain.RsEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RankingSnapshotTest {
+  List<RsEventLeaderboard.Entry> ranked =
+      Arrays.asList(
+          new RsEventLeaderboard.Entry(1, "first", "keyword", 5),
+          new RsEventLeaderboard.Entry(2, "second", "keyword", 4),
+          new RsEventLeaderboard.Entry(3, "third", "keyword", 3),
+          new RsEventLeaderboard.Entry(4, "fourth", "keyword", 2));
+
+  @Test
+  void shouldKeepVoteOrderWhenNoRankIsBought() {
+    RankingSnapshot snapshot = RankingSnapshot.merge(1, ranked, Collections.emptyList());
+
+    assertEquals(Arrays.asList("first", "second", "third", "fourth"), eventNames(snapshot.getRsEvents()));
+  }
+
+  @Test
+  void shouldPinBoughtRanksAndFillTheGapsByVotes() {
+    RankingSnapshot snapshot =
+        RankingSnapshot.merge(
+            1,
+            ranked,
+            Arrays.asList(new RankingSnapshot.PaidSlot(1, 4), new RankingSnapshot.PaidSlot(3, 1)));
+
+    assertEquals(Arrays.asList("fourth", "second", "first", "third"), eventNames(snapshot.getRsEvents()));
+    assertEquals(Arrays.asList("second", "first"), eventNames(snapshot.getRsEvents(2, 3)));
+  }
+
+  @Test
+  void shouldMoveBoughtRankUpWhenItIsBehindTheLastEvent() {
+    RankingSnapshot snapshot =
+        RankingSnapshot.merge(1, ranked, Collections.singletonList(new RankingSnapshot.PaidSlot(9, 2)));
+
+    assertEquals(Arrays.asList("first", "third", "fourth", "second"), eventNames(snapshot.getRsEvents()));
+    assertEquals(Collections.emptyList(), eventNames(snapshot.getRsEvents(5, 6)));
+  }
+
+  private static List<String> eventNames(List<RsEvent> rsEvents) {
+    return rsEvents.stream().map(RsEvent::getEventName).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,114 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.dto.RsEventDto;
+import com.thoughtworks.rslist.dto.RsEventSummary;
+import com.thoughtworks.rslist.repository.RsEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class RsEventLeaderboardTest {
+  RsEventLeaderboard rsEventLeaderboard;
+
+  @Mock RsEventRepository rsEventRepository;
+
+  @BeforeEach
+  void setUp() {
+    initMocks(this);
+    rsEventLeaderboard = new RsEventLeaderboard(rsEventRepository, new RankingVersion(), new RsListProperties());
+    when(rsEventRepository.findAllRanked())
+        .thenReturn(
+            Arrays.asList(
+                summary(1, "first", 1),
+                summary(2, "second", 3),
+                summary(3, "third", 1)));
+  }
+
+  @Test
+  void shouldSortByVoteNumThenByIdWhenLoaded() {
+    List<String> rsEvents = eventNames(rsEventLeaderboard.getEntries());
+
+    assertEquals(3, rsEvents.size());
+    assertEquals("second", rsEvents.get(0));
+    assertEquals("first", rsEvents.get(1));
+    assertEquals("third", rsEvents.get(2));
+  }
+
+  @Test
+  void shouldLoadFromDatabaseOnlyOnce() {
+    rsEventLeaderboard.getEntries();
+    rsEventLeaderboard.getEntries();
+
+    verify(rsEventRepository, times(1)).findAllRanked();
+  }
+
+  @Test
+  void shouldReorderWhenEventIsSaved() {
+    rsEventLeaderboard.getEntries();
+
+    rsEventLeaderboard.save(
+        RsEventLeaderboard.Entry.of(
+            RsEventDto.builder().id(3).eventName("third").keyword("keyword").voteNum(5).build()));
+    rsEventLeaderboard.save(
+        RsEventLeaderboard.Entry.of(
+            RsEventDto.builder().id(4).eventName("fourth").keyword("keyword").voteNum(0).build()));
+    List<String> rsEvents = eventNames(rsEventLeaderboard.getEntries());
+
+    assertEquals(4, rsEvents.size());
+    assertEquals("third", rsEvents.get(0));
+    assertEquals("second", rsEvents.get(1));
+    assertEquals("first", rsEvents.get(2));
+    assertEquals("fourth", rsEvents.get(3));
+  }
+
+  @Test
+  void shouldDropEventWhenRemoved() {
+    rsEventLeaderboard.getEntries();
+
+    rsEventLeaderboard.remove(2);
+    List<String> rsEvents = eventNames(rsEventLeaderboard.getEntries());
+
+    assertEquals(2, rsEvents.size());
+    assertEquals("first", rsEvents.get(0));
+    assertEquals("third", rsEvents.get(1));
+  }
+
+  private static List<String> eventNames(List<RsEventLeaderboard.Entry> entries) {
+    return entries.stream().map(RsEventLeaderboard.Entry::getEventName).collect(Collectors.toList());
+  }
+
+  private static RsEventSummary summary(int id, String eventName, int voteNum) {
+    return new RsEventSummary() {
+      @Override
+      public int getId() {
+        return id;
+      }
+
+      @Override
+      public String getEventName() {
+        return eventName;
+      }
+
+      @Override
+      public String getKeyword() {
+        return "keyword";
+      }
+
+      @Override
+      public int getVoteNum() {
+        return voteNum;
+      }
+    };
+  }
+}
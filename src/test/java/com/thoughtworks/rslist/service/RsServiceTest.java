@@ -1,20 +1,29 @@
 package com.thoughtworks.rslist.service;
 
+import com.thoughtworks.rslist.config.RsListProperties;
 import com.thoughtworks.rslist.domain.Trade;
 import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteResult;
 import com.thoughtworks.rslist.dto.*;
 import com.thoughtworks.rslist.exception.AmountIsLessException;
 import com.thoughtworks.rslist.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -29,6 +38,18 @@ class RsServiceTest {
   TradeOnlyRepository tradeOnlyRepository;
   @Mock
   TradeRepository tradeRepository;
+  @Mock
+  RsEventLeaderboard rsEventLeaderboard;
+  @Mock
+  RankingSnapshotPublisher rankingSnapshotPublisher;
+  @Mock
+  VoteDeltaBuffer voteDeltaBuffer;
+  @Mock
+  PlatformTransactionManager transactionManager;
+  @Mock
+  TrendingCounters trendingCounters;
+  @Mock
+  ShardedVoteCounter shardedVoteCounter;
 
 
   LocalDateTime localDateTime;
@@ -37,7 +58,10 @@ class RsServiceTest {
   @BeforeEach
   void setUp() {
     initMocks(this);
-    rsService = new RsService(rsEventRepository, userRepository, voteRepository, tradeOnlyRepository, tradeRepository);
+    rsService = new RsService(rsEventRepository, userRepository, voteRepository, tradeOnlyRepository, tradeRepository,
+            rsEventLeaderboard, rankingSnapshotPublisher, voteDeltaBuffer,
+            new RankAuctionBook(tradeOnlyRepository, new TransactionTemplate(transactionManager), new RsListProperties()),
+            trendingCounters, shardedVoteCounter);
     localDateTime = LocalDateTime.now();
     vote = Vote.builder().voteNum(2).rsEventId(1).time(localDateTime).userId(1).build();
   }
@@ -45,28 +69,8 @@ class RsServiceTest {
   @Test
   void shouldVoteSuccess() {
     // given
-
-    UserDto userDto =
-        UserDto.builder()
-            .voteNum(5)
-            .phone("18888888888")
-            .gender("female")
-            .email("a@b.com")
-            .age(19)
-            .userName("xiaoli")
-            .id(2)
-            .build();
-    RsEventDto rsEventDto =
-        RsEventDto.builder()
-            .eventName("event name")
-            .id(1)
-            .keyword("keyword")
-            .voteNum(2)
-            .user(userDto)
-            .build();
-
-    when(rsEventRepository.findById(anyInt())).thenReturn(Optional.of(rsEventDto));
-    when(userRepository.findById(anyInt())).thenReturn(Optional.of(userDto));
+    when(userRepository.debitVotes(1, 2)).thenReturn(1);
+    when(rsEventRepository.addVotes(1, 2)).thenReturn(1);
     // when
     rsService.vote(vote, 1);
     // then
@@ -75,26 +79,135 @@ class RsServiceTest {
             VoteDto.builder()
                 .num(2)
                 .localDateTime(localDateTime)
-                .user(userDto)
-                .rsEvent(rsEventDto)
+                .user(UserDto.builder().id(1).build())
+                .rsEvent(RsEventDto.builder().id(1).build())
                 .build());
-    verify(userRepository).save(userDto);
-    verify(rsEventRepository).save(rsEventDto);
+    verify(rsEventLeaderboard).addVotes(1, 2);
+    verify(trendingCounters).add(1, 2);
+    verify(userRepository, never()).save(any());
+    verify(rsEventRepository, never()).save(any());
+  }
+
+  @Test
+  void shouldBufferEventVotesWhenWriteBehindIsEnabled() {
+    // given
+    when(userRepository.debitVotes(1, 2)).thenReturn(1);
+    when(rsEventRepository.existsById(1)).thenReturn(true);
+    when(voteDeltaBuffer.isEnabled()).thenReturn(true);
+    // when
+    rsService.vote(vote, 1);
+    // then
+    verify(voteDeltaBuffer).add(1, 2);
+    verify(rsEventLeaderboard).addVotes(1, 2);
+    verify(rsEventRepository, never()).addVotes(anyInt(), anyInt());
   }
 
   @Test
   void shouldThrowExceptionWhenUserNotExist() {
     // given
-    when(rsEventRepository.findById(anyInt())).thenReturn(Optional.empty());
-    when(userRepository.findById(anyInt())).thenReturn(Optional.empty());
+    when(userRepository.debitVotes(anyInt(), anyInt())).thenReturn(0);
+    //when&then
+    assertThrows(
+        RuntimeException.class,
+        () -> {
+          rsService.vote(vote, 1);
+        });
+    verify(rsEventRepository, never()).addVotes(anyInt(), anyInt());
+  }
+
+  @Test
+  void shouldThrowExceptionWhenRsEventNotExist() {
+    // given
+    when(userRepository.debitVotes(1, 2)).thenReturn(1);
+    when(rsEventRepository.addVotes(1, 2)).thenReturn(0);
     //when&then
     assertThrows(
         RuntimeException.class,
         () -> {
           rsService.vote(vote, 1);
         });
+    verify(rsEventLeaderboard, never()).addVotes(anyInt(), anyInt());
   }
 
+  @Test
+  void shouldThrowExceptionWhenVoteNumIsNotPositive() {
+    vote.setVoteNum(-1);
+    //when&then
+    assertThrows(
+        RuntimeException.class,
+        () -> {
+          rsService.vote(vote, 1);
+        });
+    verify(userRepository, never()).debitVotes(anyInt(), anyInt());
+  }
+
+
+  @Test
+  void shouldVoteAllAndReportEachVote() {
+    // given
+    Vote secondVote = Vote.builder().voteNum(3).rsEventId(2).time(localDateTime).userId(1).build();
+    Vote tooManyVotes = Vote.builder().voteNum(9).rsEventId(1).time(localDateTime).userId(1).build();
+    Vote unknownUser = Vote.builder().voteNum(1).rsEventId(1).time(localDateTime).userId(5).build();
+    Vote unknownEvent = Vote.builder().voteNum(1).rsEventId(7).time(localDateTime).userId(1).build();
+    when(userRepository.findAllById(any()))
+        .thenReturn(Collections.singletonList(UserDto.builder().id(1).voteNum(10).build()));
+    when(rsEventRepository.findExistingIds(any())).thenReturn(Arrays.asList(1, 2));
+    when(userRepository.debitVotes(1, 5)).thenReturn(1);
+    when(rsEventRepository.addVotes(anyInt(), anyInt())).thenReturn(1);
+    // when
+    List<VoteResult> results =
+        rsService.voteAll(Arrays.asList(vote, secondVote, tooManyVotes, unknownUser, unknownEvent));
+    // then
+    assertEquals(
+        Arrays.asList(
+            VoteResult.accepted(vote),
+            VoteResult.accepted(secondVote),
+            VoteResult.rejected(tooManyVotes, "vote num is not enough"),
+            VoteResult.rejected(unknownUser, "user not exist"),
+            VoteResult.rejected(unknownEvent, "rsevent is not exist")),
+        results);
+    verify(voteRepository).saveAll(any());
+    verify(rsEventRepository).addVotes(1, 2);
+    verify(rsEventRepository).addVotes(2, 3);
+    verify(rsEventLeaderboard).addVotes(1, 2);
+    verify(rsEventLeaderboard).addVotes(2, 3);
+  }
+
+  @Test
+  void shouldOnlyRejectVotesOfEventDeletedDuringVoteAll() {
+    // given
+    Vote deletedEvent = Vote.builder().voteNum(3).rsEventId(2).time(localDateTime).userId(1).build();
+    when(userRepository.findAllById(any()))
+        .thenReturn(Collections.singletonList(UserDto.builder().id(1).voteNum(10).build()));
+    when(rsEventRepository.findExistingIds(any())).thenReturn(Arrays.asList(1, 2));
+    when(userRepository.debitVotes(1, 5)).thenReturn(1);
+    when(rsEventRepository.addVotes(1, 2)).thenReturn(1);
+    when(rsEventRepository.addVotes(2, 3)).thenReturn(0);
+    // when
+    List<VoteResult> results = rsService.voteAll(Arrays.asList(vote, deletedEvent));
+    // then
+    assertEquals(
+        Arrays.asList(VoteResult.accepted(vote), VoteResult.rejected(deletedEvent, "rsevent is not exist")),
+        results);
+    verify(userRepository).refundVotes(1, 3);
+    verify(rsEventLeaderboard).addVotes(1, 2);
+    verify(rsEventLeaderboard, never()).addVotes(2, 3);
+  }
+
+  @Test
+  void shouldRejectVotesOfUserWhenDebitFails() {
+    // given
+    when(userRepository.findAllById(any()))
+        .thenReturn(Collections.singletonList(UserDto.builder().id(1).voteNum(10).build()));
+    when(rsEventRepository.findExistingIds(any())).thenReturn(Collections.singletonList(1));
+    when(userRepository.debitVotes(1, 2)).thenReturn(0);
+    // when
+    List<VoteResult> results = rsService.voteAll(Collections.singletonList(vote));
+    // then
+    assertEquals(Collections.singletonList(VoteResult.rejected(vote, "vote num is not enough")), results);
+    verify(rsEventRepository, never()).addVotes(anyInt(), anyInt());
+    verify(rsEventLeaderboard, never()).addVotes(anyInt(), anyInt());
+  }
 
   @Test
   void shouldBuyRsEventSuccessWhenBuyGivenRsEventIdAndNotExistRank() {
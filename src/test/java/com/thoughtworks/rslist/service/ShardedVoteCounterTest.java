@@ -0,0 +1,150 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.CacheConfig;
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.dto.VoteShardDto;
+import com.thoughtworks.rslist.repository.VoteShardRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class ShardedVoteCounterTest {
+  ShardedVoteCounter shardedVoteCounter;
+  ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(CacheConfig.RS_EVENTS);
+
+  @Mock JdbcTemplate jdbcTemplate;
+  @Mock VoteShardRepository voteShardRepository;
+  @Mock PlatformTransactionManager transactionManager;
+
+  @BeforeEach
+  void setUp() {
+    initMocks(this);
+    RsListProperties properties = new RsListProperties();
+    properties.getVote().getShardedCounter().setEnabled(true);
+    properties.getVote().getShardedCounter().setShards(4);
+    shardedVoteCounter = new ShardedVoteCounter(jdbcTemplate, new TransactionTemplate(transactionManager),
+        voteShardRepository, cacheManager, properties);
+  }
+
+  @Test
+  void shouldCreditTheShardOfTheVotingThread() {
+    when(jdbcTemplate.update(anyString(), eq(2), eq(1), anyInt())).thenReturn(1);
+
+    assertTrue(shardedVoteCounter.add(1, 2));
+
+    int shard = (int) (Thread.currentThread().getId() % 4);
+    verify(jdbcTemplate).update(startsWith("update rs_event_vote_shard"), eq(2), eq(1), eq(shard));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldCreateShardsOnCompactionForEventsVotedWithoutThem() {
+    assertFalse(shardedVoteCounter.add(1, 2));
+
+    shardedVoteCounter.compact();
+
+    ArgumentCaptor<Iterable<VoteShardDto>> shards = ArgumentCaptor.forClass(Iterable.class);
+    verify(voteShardRepository).saveAll(shards.capture());
+    List<Integer> created = new ArrayList<>();
+    shards.getValue().forEach(shard -> {
+      assertEquals(1, shard.getRsEventId());
+      created.add(shard.getShard());
+    });
+    assertEquals(Arrays.asList(0, 1, 2, 3), created);
+    verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+
+    shardedVoteCounter.compact();
+    verify(voteShardRepository).saveAll(any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldFoldShardsIntoTheirEventsInIdOrderInOneTransaction() throws Exception {
+    Cache rsEvents = cacheManager.getCache(CacheConfig.RS_EVENTS);
+    rsEvents.put(1, "stale");
+    rsEvents.put(3, "untouched");
+    doAnswer(invocation -> {
+      RowCallbackHandler handler = invocation.getArgument(1);
+      handler.processRow(shardRow(10, 2, -1));
+      handler.processRow(shardRow(11, 1, 3));
+      handler.processRow(shardRow(20, 1, 4));
+      return null;
+    }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+    shardedVoteCounter.compact();
+
+    ArgumentCaptor<List<Object[]>> debits = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate).batchUpdate(startsWith("update rs_event_vote_shard"), debits.capture());
+    assertEquals(3, debits.getValue().size());
+    assertArrayEquals(new Object[] {-1L, 10}, debits.getValue().get(0));
+    ArgumentCaptor<List<Object[]>> credits = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate).batchUpdate(startsWith("update rs_event set"), credits.capture());
+    List<Object[]> batch = credits.getValue();
+    assertArrayEquals(new Object[] {7L, 1}, batch.get(0));
+    assertArrayEquals(new Object[] {-1L, 2}, batch.get(1));
+    verify(transactionManager).commit(any());
+    assertNull(rsEvents.get(1));
+    assertNotNull(rsEvents.get(3));
+  }
+
+  @Test
+  void shouldLockTheShardsItReadsInsideTheCompactionTransaction() {
+    shardedVoteCounter.compact();
+
+    InOrder inOrder = inOrder(transactionManager, jdbcTemplate);
+    inOrder.verify(transactionManager).getTransaction(any());
+    inOrder.verify(jdbcTemplate).query(endsWith("for update"), any(RowCallbackHandler.class));
+    inOrder.verify(transactionManager).commit(any());
+  }
+
+  @Test
+  void shouldLeaveOrphanedShardsToTheirOwnCleanup() {
+    shardedVoteCounter.compact();
+    verify(jdbcTemplate, never()).update(startsWith("delete"));
+
+    shardedVoteCounter.deleteOrphans();
+    verify(jdbcTemplate).update(startsWith("delete from rs_event_vote_shard"));
+  }
+
+  private static ResultSet shardRow(int id, int rsEventId, long voteNum) throws Exception {
+    ResultSet row = mock(ResultSet.class);
+    when(row.getInt(1)).thenReturn(id);
+    when(row.getInt(2)).thenReturn(rsEventId);
+    when(row.getLong(3)).thenReturn(voteNum);
+    return row;
+  }
+}
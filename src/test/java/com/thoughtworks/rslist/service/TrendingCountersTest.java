@@ -0,0 +1,70 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrendingCountersTest {
+  TrendingCounters trendingCounters;
+  AtomicLong now;
+
+  @BeforeEach
+  void setUp() {
+    RsListProperties properties = new RsListProperties();
+    properties.getTrending().setBucket(Duration.ofSeconds(10));
+    properties.getTrending().setMaxWindow(Duration.ofMinutes(10));
+    now = new AtomicLong(Duration.ofHours(1).toMillis());
+    trendingCounters = new TrendingCounters(properties, now::get);
+  }
+
+  @Test
+  void shouldRankEventsByVotesInTheWindow() {
+    trendingCounters.add(1, 5);
+    advance(Duration.ofMinutes(3));
+    trendingCounters.add(2, 2);
+    trendingCounters.add(3, 4);
+    trendingCounters.add(2, 3);
+    advance(Duration.ofSeconds(10));
+
+    assertTrends(trendingCounters.top(Duration.ofMinutes(1), 10), 2, 5L, 3, 4L);
+    assertTrends(trendingCounters.top(Duration.ofMinutes(5), 2), 1, 5L, 2, 5L);
+  }
+
+  @Test
+  void shouldOnlyCountClosedBuckets() {
+    trendingCounters.add(1, 5);
+
+    assertTrue(trendingCounters.top(Duration.ofMinutes(1), 10).isEmpty());
+    advance(Duration.ofSeconds(10));
+    assertTrends(trendingCounters.top(Duration.ofMinutes(1), 10), 1, 5L);
+  }
+
+  @Test
+  void shouldForgetVotesOlderThanTheRing() {
+    trendingCounters.add(1, 5);
+    advance(Duration.ofMinutes(10));
+    trendingCounters.add(1, 1);
+    advance(Duration.ofSeconds(10));
+
+    assertTrends(trendingCounters.top(Duration.ofMinutes(10), 10), 1, 1L);
+  }
+
+  private void advance(Duration duration) {
+    now.addAndGet(duration.toMillis());
+  }
+
+  private static void assertTrends(List<TrendingCounters.Trend> trends, Object... idsAndVotes) {
+    assertEquals(idsAndVotes.length / 2, trends.size());
+    for (int index = 0; index < trends.size(); index++) {
+      assertEquals(idsAndVotes[index * 2], trends.get(index).getRsEventId());
+      assertEquals(idsAndVotes[index * 2 + 1], trends.get(index).getVoteNum());
+    }
+  }
+}
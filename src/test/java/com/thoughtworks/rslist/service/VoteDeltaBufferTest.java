@@ -0,0 +1,115 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.CacheConfig;
+import com.thoughtworks.rslist.config.RsListProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class VoteDeltaBufferTest {
+  VoteDeltaBuffer voteDeltaBuffer;
+
+  @Mock JdbcTemplate jdbcTemplate;
+  @Mock PlatformTransactionManager transactionManager;
+  ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(CacheConfig.RS_EVENTS);
+
+  @BeforeEach
+  void setUp() {
+    initMocks(this);
+    voteDeltaBuffer = new VoteDeltaBuffer(jdbcTemplate, new TransactionTemplate(transactionManager), cacheManager,
+        new RsListProperties());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldFlushOneUpdatePerEventInOneBatch() {
+    Cache rsEvents = cacheManager.getCache(CacheConfig.RS_EVENTS);
+    rsEvents.put(1, "stale");
+    rsEvents.put(3, "untouched");
+    voteDeltaBuffer.add(1, 2);
+    voteDeltaBuffer.add(2, 1);
+    voteDeltaBuffer.add(1, 3);
+
+    voteDeltaBuffer.flush();
+
+    ArgumentCaptor<List<Object[]>> credits = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate).batchUpdate(anyString(), credits.capture());
+    List<Object[]> batch = credits.getValue();
+    batch.sort(Comparator.comparing(credit -> (Integer) credit[1]));
+    assertEquals(2, batch.size());
+    assertArrayEquals(new Object[] {5L, 1}, batch.get(0));
+    assertArrayEquals(new Object[] {1L, 2}, batch.get(1));
+    assertEquals(0, voteDeltaBuffer.getPending());
+    assertNull(rsEvents.get(1));
+    assertNotNull(rsEvents.get(3));
+  }
+
+  @Test
+  void shouldNotTouchDatabaseWhenNothingIsBuffered() {
+    voteDeltaBuffer.flush();
+
+    verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+  }
+
+  @Test
+  void shouldKeepDeltasWhenFlushFails() {
+    voteDeltaBuffer.add(1, 2);
+    when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new IllegalStateException());
+
+    assertThrows(IllegalStateException.class, () -> voteDeltaBuffer.flush());
+    assertEquals(2, voteDeltaBuffer.getPending());
+    assertThrows(IllegalStateException.class, () -> voteDeltaBuffer.flush());
+    verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyList());
+  }
+
+  @Test
+  void shouldFlushInOneTransactionSoFailedBatchIsRolledBackAsAWhole() {
+    voteDeltaBuffer.add(1, 2);
+    when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new IllegalStateException());
+
+    assertThrows(IllegalStateException.class, () -> voteDeltaBuffer.flush());
+
+    verify(transactionManager).rollback(any());
+    verify(transactionManager, never()).commit(any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldDropEventsThatGotNoVotesSinceLastFlush() {
+    voteDeltaBuffer.add(1, 2);
+    voteDeltaBuffer.flush();
+    assertEquals(1, voteDeltaBuffer.getBufferedEvents());
+    voteDeltaBuffer.flush();
+    assertEquals(0, voteDeltaBuffer.getBufferedEvents());
+    voteDeltaBuffer.add(1, 3);
+    voteDeltaBuffer.flush();
+
+    ArgumentCaptor<List<Object[]>> credits = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate, times(2)).batchUpdate(anyString(), credits.capture());
+    assertArrayEquals(new Object[] {3L, 1}, credits.getAllValues().get(1).get(0));
+    assertEquals(0, voteDeltaBuffer.getPending());
+  }
+}
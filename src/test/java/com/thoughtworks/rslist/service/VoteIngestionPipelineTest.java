@@ -0,0 +1,135 @@
+package com.thoughtworks.rslist.service;
+
+import com.thoughtworks.rslist.config.RsListProperties;
+import com.thoughtworks.rslist.domain.Vote;
+import com.thoughtworks.rslist.domain.VoteIngestionStats;
+import com.thoughtworks.rslist.domain.VoteResult;
+import com.thoughtworks.rslist.exception.RequestNotValidException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class VoteIngestionPipelineTest {
+  VoteIngestionPipeline voteIngestionPipeline;
+  RsListProperties properties;
+
+  @Mock RsService rsService;
+  @Mock RsEventLeaderboard rsEventLeaderboard;
+
+  @BeforeEach
+  void setUp() {
+    initMocks(this);
+    properties = new RsListProperties();
+    properties.getVote().getAsync().setEnabled(true);
+    properties.getVote().getAsync().setShards(2);
+    properties.getVote().getAsync().setQueueCapacity(2);
+    voteIngestionPipeline = new VoteIngestionPipeline(rsService, rsEventLeaderboard, properties);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldApplyQueuedVotesWhenStopped() throws InterruptedException {
+    when(rsService.voteAll(anyList()))
+        .thenAnswer(invocation -> ((List<Vote>) invocation.getArgument(0)).stream()
+            .map(VoteResult::accepted)
+            .collect(Collectors.toList()));
+    voteIngestionPipeline.submit(vote(1));
+    voteIngestionPipeline.submit(vote(2));
+    voteIngestionPipeline.submit(vote(3));
+
+    voteIngestionPipeline.start();
+    voteIngestionPipeline.stop();
+
+    ArgumentCaptor<List<Vote>> batches = ArgumentCaptor.forClass(List.class);
+    verify(rsService, atLeastOnce()).voteAll(batches.capture());
+    assertEquals(3, batches.getAllValues().stream().mapToInt(List::size).sum());
+    VoteIngestionStats stats = voteIngestionPipeline.getStats();
+    assertEquals(3, stats.getAccepted());
+    assertEquals(3, stats.getApplied());
+    assertEquals(0, stats.getQueueDepth());
+  }
+
+  @Test
+  void shouldKeepVotesForOneEventOnOneShard() {
+    assertTrue(voteIngestionPipeline.submit(vote(1)));
+    assertTrue(voteIngestionPipeline.submit(vote(1)));
+    assertFalse(voteIngestionPipeline.submit(vote(1)));
+    assertTrue(voteIngestionPipeline.submit(vote(2)));
+
+    VoteIngestionStats stats = voteIngestionPipeline.getStats();
+    assertEquals(3, stats.getAccepted());
+    assertEquals(1, stats.getRejected());
+    assertEquals(3, stats.getQueueDepth());
+    assertEquals(4, stats.getQueueCapacity());
+  }
+
+  @Test
+  void shouldRejectInvalidVoteBeforeQueueing() {
+    when(rsEventLeaderboard.isEnabled()).thenReturn(true);
+    when(rsEventLeaderboard.indexOf(9)).thenReturn(-1);
+    Vote negativeVote = vote(1);
+    negativeVote.setVoteNum(-1);
+
+    assertThrows(RequestNotValidException.class, () -> voteIngestionPipeline.submit(negativeVote));
+    assertThrows(RequestNotValidException.class, () -> voteIngestionPipeline.submit(vote(9)));
+    assertEquals(0, voteIngestionPipeline.getStats().getQueueDepth());
+    verify(rsService, never()).voteAll(anyList());
+  }
+
+  @Test
+  void shouldRetryBatchThatLostADeadlock() {
+    Vote vote = vote(1);
+    when(rsService.voteAll(Collections.singletonList(vote)))
+        .thenThrow(new DeadlockLoserDataAccessException("deadlock", null))
+        .thenReturn(Collections.singletonList(VoteResult.accepted(vote)));
+
+    voteIngestionPipeline.apply(Collections.singletonList(new VoteIngestionPipeline.PendingVote(vote, System.nanoTime())));
+
+    verify(rsService, times(2)).voteAll(Collections.singletonList(vote));
+    assertEquals(1, voteIngestionPipeline.getStats().getApplied());
+    assertEquals(0, voteIngestionPipeline.getStats().getFailed());
+  }
+
+  @Test
+  void shouldApplyVotesOneByOneWhenBatchFails() {
+    Vote good = vote(1);
+    Vote bad = vote(2);
+    when(rsService.voteAll(Arrays.asList(good, bad))).thenThrow(new IllegalStateException());
+    when(rsService.voteAll(Collections.singletonList(good)))
+        .thenReturn(Collections.singletonList(VoteResult.accepted(good)));
+    when(rsService.voteAll(Collections.singletonList(bad))).thenThrow(new IllegalStateException());
+
+    voteIngestionPipeline.apply(Arrays.asList(
+        new VoteIngestionPipeline.PendingVote(good, System.nanoTime()),
+        new VoteIngestionPipeline.PendingVote(bad, System.nanoTime())));
+
+    verify(rsService).voteAll(Arrays.asList(good, bad));
+    VoteIngestionStats stats = voteIngestionPipeline.getStats();
+    assertEquals(1, stats.getApplied());
+    assertEquals(1, stats.getFailed());
+  }
+
+  private Vote vote(int rsEventId) {
+    return Vote.builder().userId(1).rsEventId(rsEventId).voteNum(1).time(LocalDateTime.now()).build();
+  }
+}